@@ -0,0 +1,20 @@
+package se.prolore.metrics;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks with the JMH command line options, e.g.
+//   java -jar target/benchmarks.jar ChurnBenchmark -p lines=10000
+// The gc profiler is always added, so every result also shows the bytes allocated per operation.
+public class Benchmarks {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    new Runner(new OptionsBuilder()
+        .parent(options)
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,65 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Code churn between two versions of a file, for each diff algorithm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  public int lines;
+
+  // Percent of the lines that are changed, deleted or added in the new version
+  @Param({"1", "20"})
+  public int editPercent;
+
+  @Param({"heckel", "myers", "histogram"})
+  public String algorithm;
+
+  private ComplexityParser oldFile;
+  private ComplexityParser newFile;
+  private Diff reused;
+
+  @Setup
+  public void setup() throws IOException {
+    Corpus corpus = new Corpus(42);
+    List<String> source = corpus.source(lines, 40);
+    File dir = Corpus.tempDir();
+    oldFile = new ComplexityParser(Corpus.writeTemp(new File(dir, "Old.java"), source));
+    newFile = new ComplexityParser(Corpus.writeTemp(new File(dir, "New.java"), corpus.edit(source, editPercent)));
+    reused = new Diff(null, Diff.getAlgorithm(algorithm));
+  }
+
+  @Benchmark
+  public int countChurn() throws IOException {
+    new Diff(null, Diff.getAlgorithm(algorithm)).countChurn(oldFile, newFile);
+    return newFile.getCodeChurn();
+  }
+
+  // The same comparison with a Diff that has compared the files before, as each worker does
+  @Benchmark
+  public int countChurnReused() throws IOException {
+    reused.countChurn(oldFile, newFile);
+    return newFile.getCodeChurn();
+  }
+}
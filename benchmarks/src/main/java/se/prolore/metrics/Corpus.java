@@ -0,0 +1,377 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Java-like source for benchmarks and stress runs, the same for the same seed, so runs can be compared.
+// The source has everything JavaFileType and Method look at: all the keywords and operators, line,
+// block and javadoc comments, string and char literals with "//", "{" and quotes in them, nested
+// blocks up to maxDepth and, if wanted, very long lines.
+// Edited versions of a source, and whole trees of files in an old and a new version, are made for Diff.
+public class Corpus {
+  // Statements, %d is replaced with a number
+  private static final String[] STATEMENTS = {
+    "int count%d = items.size() + offset;",
+    "String name%d = \"value // not a comment {\";",
+    "String path%d = \"http://example.com/{id}\" + '{' + \"\\\"}\";",
+    "result = first && second || (third ? left : right);",
+    "list.add(new Item(name, %d));",
+    "total += values[index] * factor - %d;",
+    "System.out.println(\"done: \" + total); // trailing comment with if and while",
+    "double modifier%d = scale / 2.0; /* inline block comment */",
+    "char separator%d = ':';",
+    "List<?> wildcard%d = Collections.emptyList();",
+    "items.forEach(Item::reset);",
+    "Runnable task%d = () -> handle(%d);",
+    "if (done) return;",
+    "if (total > %d) throw new IllegalStateException(\"too large\");",
+    "value = value > 0 ? value : -value;"
+  };
+  // Statements only allowed in loops
+  private static final String[] LOOP_STATEMENTS = {
+    "if (skip) continue;",
+    "if (stop) break;"
+  };
+
+  // Kinds of blocks
+  private static final int IF = 0, LOOP = 1, DO = 2, TRY = 3, SWITCH = 4;
+
+  private final long seed;
+  private Random random;
+  private int maxDepth = 5;
+  private int longLineLength = 0;
+
+  public Corpus(long seed) {
+    this.seed = seed;
+    random = new Random(seed);
+  }
+
+  // The deepest nesting of blocks in a method
+  public void setMaxDepth(int maxDepth) {
+    this.maxDepth = maxDepth;
+  }
+
+  // If not 0, two percent of the statements are conditions of about this many characters
+  public void setLongLineLength(int longLineLength) {
+    this.longLineLength = longLineLength;
+  }
+
+  // A class with about the given number of lines in methods of about methodLines lines each
+  public List<String> source(int lines, int methodLines) {
+    List<String> source = new ArrayList<String>(lines + methodLines + 16);
+    source.add("package generated;");
+    source.add("");
+    source.add("import java.util.*;");
+    source.add("");
+    source.add("/**");
+    source.add(" * Generated source, do not edit. {@link Object}");
+    source.add(" */");
+    source.add("public class Generated {");
+    source.add("  private static final String URL = \"http://example.com\"; // not a method");
+    int methodNr = 0;
+    while (source.size() < lines) {
+      source.add("");
+      source.addAll(method(methodNr, methodLines));
+      methodNr++;
+    }
+    source.add("}");
+    return source;
+  }
+
+  // One method of about methodLines lines
+  public List<String> method(int methodNr, int methodLines) {
+    List<String> method = new ArrayList<String>(methodLines + maxDepth + 8);
+    method.add("  /*");
+    method.add("   * Method number " + methodNr + ", if this were code it would count");
+    method.add("   */");
+    method.add("  public int method" + methodNr + "(int count, int limit) throws Exception {");
+
+    // The kinds of the open blocks
+    List<Integer> blocks = new ArrayList<Integer>();
+    for (int i = 0; i < methodLines; i++) {
+      int depth = blocks.size() + 2;
+      int kind = random.nextInt(20);
+      if (kind < 3 && blocks.size() < maxDepth) {
+        blocks.add(openBlock(method, depth));
+      } else if (kind < 5 && !blocks.isEmpty()) {
+        closeBlock(method, depth - 1, blocks.remove(blocks.size() - 1));
+      } else if (kind == 5) {
+        method.add(indent(depth) + "// " + statement());
+      } else if (kind == 6) {
+        method.add("");
+      } else if (kind == 7 && (blocks.contains(LOOP) || blocks.contains(DO))) {
+        method.add(indent(depth) + LOOP_STATEMENTS[random.nextInt(LOOP_STATEMENTS.length)]);
+      } else if (kind == 8 && longLineLength > 0 && random.nextInt(5) == 0) {
+        method.add(indent(depth) + longLine());
+      } else {
+        method.add(indent(depth) + statement());
+      }
+    }
+    while (!blocks.isEmpty()) {
+      closeBlock(method, blocks.size() + 1, blocks.remove(blocks.size() - 1));
+    }
+    method.add("    return count;");
+    method.add("  }");
+    return method;
+  }
+
+  // Add the first line of a block, returns the kind of block
+  private int openBlock(List<String> method, int depth) {
+    String indent = indent(depth);
+    switch (random.nextInt(6)) {
+      case 0:
+        method.add(indent + "if (count > limit && limit != 0) {");
+        return IF;
+      case 1:
+        method.add(indent + "for (int i = 0; i < count; i++) {");
+        return LOOP;
+      case 2:
+        method.add(indent + "while (iterator.hasNext() || retry) {");
+        return LOOP;
+      case 3:
+        method.add(indent + "do {");
+        return DO;
+      case 4:
+        method.add(indent + "try {");
+        return TRY;
+      default:
+        method.add(indent + "switch (kind) {");
+        method.add(indent + "case 1:");
+        method.add(indent + "  count++;");
+        method.add(indent + "  break;");
+        method.add(indent + "default:");
+        return SWITCH;
+    }
+  }
+
+  // Add the last lines of a block, with else, catch and finally now and then
+  private void closeBlock(List<String> method, int depth, int kind) {
+    String indent = indent(depth);
+    if (kind == DO) {
+      method.add(indent + "} while (count-- > 0);");
+    } else if (kind == IF && random.nextInt(3) == 0) {
+      method.add(indent + "} else if (limit < 0) {");
+      method.add(indent + "  count = -limit;");
+      method.add(indent + "} else {");
+      method.add(indent + "  count = limit;");
+      method.add(indent + "}");
+    } else if (kind == TRY && random.nextBoolean()) {
+      method.add(indent + "} catch (RuntimeException e) {");
+      method.add(indent + "  throw e;");
+      method.add(indent + "} finally {");
+      method.add(indent + "  count = 0;");
+      method.add(indent + "}");
+    } else if (kind == TRY) {
+      method.add(indent + "} finally { count = 0; }");
+    } else {
+      method.add(indent + "}");
+    }
+  }
+
+  private String statement() {
+    return STATEMENTS[random.nextInt(STATEMENTS.length)].replace("%d", Integer.toString(random.nextInt(1000)));
+  }
+
+  private String longLine() {
+    StringBuilder line = new StringBuilder("result = flag0");
+    for (int i = 1; line.length() < longLineLength; i++) {
+      line.append(i % 3 == 0 ? " || " : " && ").append("flag").append(i);
+    }
+    return line.append(";").toString();
+  }
+
+  // A copy of source where about percent of the statements are added, changed or deleted, and
+  // percent of the methods are moved
+  public List<String> edit(List<String> source, int percent) {
+    return edit(source, percent / 3, percent - 2 * (percent / 3), percent / 3, percent);
+  }
+
+  // A copy of source where addPercent, changePercent and deletePercent of the statements are added,
+  // changed and deleted, and movePercent of the methods are moved to another place in the class
+  public List<String> edit(List<String> source, int addPercent, int changePercent, int deletePercent,
+      int movePercent) {
+    List<String> edited = new ArrayList<String>(source.size() + source.size() * addPercent / 100);
+    for (String line : source) {
+      if (!isStatement(line)) {
+        edited.add(line);
+        continue;
+      }
+      int kind = random.nextInt(100);
+      if (kind < addPercent) {
+        edited.add(line);
+        edited.add(indentOf(line) + statement());
+      } else if (kind < addPercent + changePercent) {
+        edited.add(line.replace(";", " + 1;"));
+      } else if (kind >= addPercent + changePercent + deletePercent) {
+        edited.add(line);
+      }
+      // else deleted
+    }
+    return moveMethods(edited, movePercent);
+  }
+
+  // Move percent of the methods to another place in the class
+  private List<String> moveMethods(List<String> source, int percent) {
+    // Find the methods, from the comment before them to the closing brace
+    List<int[]> methods = new ArrayList<int[]>();
+    int start = -1;
+    for (int i = 0; i < source.size(); i++) {
+      if (source.get(i).equals("  /*")) {
+        start = i;
+      } else if (source.get(i).equals("  }") && start >= 0) {
+        methods.add(new int[] {start, i + 1});
+        start = -1;
+      }
+    }
+    if (methods.size() < 2) {
+      return source;
+    }
+    List<List<String>> parts = new ArrayList<List<String>>();
+    int end = methods.get(0)[0];
+    List<String> head = new ArrayList<String>(source.subList(0, end));
+    for (int[] method : methods) {
+      parts.add(new ArrayList<String>(source.subList(method[0], method[1])));
+      end = method[1];
+    }
+    List<String> tail = new ArrayList<String>(source.subList(end, source.size()));
+
+    int moves = parts.size() * percent / 100;
+    for (int i = 0; i < moves; i++) {
+      List<String> method = parts.remove(random.nextInt(parts.size()));
+      parts.add(random.nextInt(parts.size() + 1), method);
+    }
+    List<String> moved = new ArrayList<String>(source.size());
+    moved.addAll(head);
+    for (int i = 0; i < parts.size(); i++) {
+      if (i > 0) {
+        moved.add("");
+      }
+      moved.addAll(parts.get(i));
+    }
+    moved.addAll(tail);
+    return moved;
+  }
+
+  private static boolean isStatement(String line) {
+    return line.startsWith("    ") && line.endsWith(";") && !line.trim().startsWith("}")
+        && !line.trim().startsWith("return ") && !line.trim().startsWith("break");
+  }
+
+  // Write files Java files with minLines to maxLines lines below root, at most 100 files in each
+  // directory. Returns the number of lines written.
+  public long writeTree(File root, int files, int minLines, int maxLines) throws IOException {
+    long lines = 0;
+    for (int i = 0; i < files; i++) {
+      lines = lines + write(file(root, i, i), fileCorpus(i).source(fileLines(i, minLines, maxLines), 40)).size();
+    }
+    return lines;
+  }
+
+  // Write the same tree twice, the new version with all files edited as edit(source, percent) does.
+  // Of the files, filePercent are deleted, filePercent are added and filePercent are renamed in the new version.
+  // Returns the number of lines written in the old version.
+  public long writeTreePair(File oldRoot, File newRoot, int files, int minLines, int maxLines, int percent,
+      int filePercent) throws IOException {
+    long lines = 0;
+    Random fileRandom = new Random(seed);
+    for (int i = 0; i < files; i++) {
+      Corpus corpus = fileCorpus(i);
+      List<String> source = corpus.source(fileLines(i, minLines, maxLines), 40);
+      int kind = fileRandom.nextInt(100);
+      if (kind < filePercent) {
+        // Added in the new version
+        write(file(newRoot, i, i), source);
+        continue;
+      }
+      lines = lines + write(file(oldRoot, i, i), source).size();
+      if (kind < 2 * filePercent) {
+        // Deleted in the new version
+        continue;
+      }
+      // Renamed files get a new number
+      int newNr = kind < 3 * filePercent ? files + i : i;
+      write(file(newRoot, i, newNr), corpus.edit(source, percent));
+    }
+    return lines;
+  }
+
+  private Corpus fileCorpus(int fileNr) {
+    Corpus corpus = new Corpus(seed * 1000003 + fileNr);
+    corpus.setMaxDepth(maxDepth);
+    corpus.setLongLineLength(longLineLength);
+    return corpus;
+  }
+
+  private int fileLines(int fileNr, int minLines, int maxLines) {
+    return minLines + new Random(seed + fileNr).nextInt(maxLines - minLines + 1);
+  }
+
+  // The file of number fileNr, in directory number dirNr / 100, with packages nested three deep
+  private static File file(File root, int dirNr, int fileNr) {
+    int dir = dirNr / 100;
+    File parent = new File(root, "p" + (dir / 10000) + File.separator + "q" + (dir / 100 % 100)
+        + File.separator + "r" + (dir % 100));
+    parent.mkdirs();
+    return new File(parent, "Generated" + fileNr + ".java");
+  }
+
+  public static List<String> write(File file, List<String> source) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      for (String line : source) {
+        out.println(line);
+      }
+    } finally {
+      out.close();
+    }
+    return source;
+  }
+
+  // Write a file that is removed when the JVM exits
+  public static File writeTemp(File file, List<String> source) throws IOException {
+    file.deleteOnExit();
+    write(file, source);
+    return file;
+  }
+
+  // A new temporary directory, removed when the JVM exits if it is empty by then
+  public static File tempDir() throws IOException {
+    File dir = File.createTempFile("metrics-bench", "");
+    dir.delete();
+    dir.mkdirs();
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  // Remove a directory and everything in it
+  public static void deleteTree(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteTree(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static String indent(int depth) {
+    StringBuilder indent = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      indent.append("  ");
+    }
+    return indent.toString();
+  }
+
+  private static String indentOf(String line) {
+    int i = 0;
+    while (i < line.length() && line.charAt(i) == ' ') {
+      i++;
+    }
+    return line.substring(0, i);
+  }
+}
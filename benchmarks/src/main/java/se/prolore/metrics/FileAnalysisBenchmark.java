@@ -0,0 +1,53 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Analysis of a whole file: lines of code, methods and complexity.
+// The file is read from disk each time, it is in the file system cache after the warmup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileAnalysisBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  public int lines;
+
+  private File file;
+
+  @Setup
+  public void setup() throws IOException {
+    file = Corpus.writeTemp(new File(Corpus.tempDir(), "Generated.java"), new Corpus(42).source(lines, 40));
+  }
+
+  @Benchmark
+  public ComplexityParser analyze() {
+    ComplexityParser parser = new ComplexityParser(file);
+    parser.analyze();
+    return parser;
+  }
+
+  @Benchmark
+  public ComplexityParser multiPass() {
+    ComplexityParser parser = new ComplexityParser(file);
+    parser.countComplexity();
+    parser.countLines();
+    return parser;
+  }
+}
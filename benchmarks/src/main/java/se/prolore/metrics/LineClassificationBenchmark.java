@@ -0,0 +1,69 @@
+package se.prolore.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Classification of single lines, as done for each line when lines of code are counted
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineClassificationBenchmark {
+
+  @Param({"1000", "100000"})
+  public int lines;
+
+  private String[] trimmed;
+  private JavaFileType filetype;
+  private LineState lineState;
+
+  @Setup
+  public void setup() {
+    List<String> source = new Corpus(42).source(lines, 40);
+    trimmed = new String[source.size()];
+    for (int i = 0; i < trimmed.length; i++) {
+      trimmed[i] = source.get(i).trim();
+    }
+    filetype = new JavaFileType();
+    lineState = new LineState(filetype.newLexer());
+  }
+
+  // A line is a comment if it has no code, after the state of the lines before it
+  @Benchmark
+  public void scanLine(Blackhole blackhole) {
+    lineState.reset();
+    for (String line : trimmed) {
+      lineState.scan(line);
+      blackhole.consume(lineState.hasCode());
+    }
+  }
+
+  @Benchmark
+  public void lineIsTrivial(Blackhole blackhole) {
+    for (String line : trimmed) {
+      blackhole.consume(filetype.lineIsTrivial(line));
+    }
+  }
+
+  @Benchmark
+  public void isLineStatement(Blackhole blackhole) {
+    for (String line : trimmed) {
+      blackhole.consume(filetype.isLineStatement(line));
+    }
+  }
+}
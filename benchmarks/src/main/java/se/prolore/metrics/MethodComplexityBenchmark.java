@@ -0,0 +1,58 @@
+package se.prolore.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Complexity of one method, token by token as ComplexityParser.analyze() finds it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodComplexityBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int methodLines;
+
+  private String[] lines;
+  private JavaFileType filetype;
+  private LineState lineState;
+
+  @Setup
+  public void setup() {
+    // One method, without the comment before it
+    List<String> source = new Corpus(42).method(0, methodLines);
+    List<String> method = source.subList(3, source.size());
+    lines = method.toArray(new String[method.size()]);
+    filetype = new JavaFileType();
+    lineState = new LineState(filetype.newLexer());
+  }
+
+  @Benchmark
+  public int calculateMethodComplexity() {
+    List<Method> methods = new ArrayList<Method>(1);
+    MethodDetector detector = new MethodDetector(filetype, lineState, methods);
+    lineState.reset();
+    lineState.setListener(detector);
+    for (String line : lines) {
+      lineState.scan(line);
+      detector.endOfLine(line);
+    }
+    detector.endOfFile();
+    return methods.get(0).getComplexity();
+  }
+}
@@ -0,0 +1,146 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Generates a tree of source files with Corpus, in an old and a new version, and measures the
+// throughput of the analysis of the new tree and of the code churn between the trees.
+//   java -cp target/benchmarks.jar se.prolore.metrics.Stress -files 10000 -threads 0
+public class Stress {
+  static private String usage =
+    "Usage: Stress [-options]\n" +
+    "\n" +
+    "where options include:\n" +
+    "  -files N      Nr of files in the old tree. Default is 1000.\n" +
+    "  -minlines N   Fewest lines in a file. Default is 10.\n" +
+    "  -maxlines N   Most lines in a file. Default is 2000.\n" +
+    "  -depth N      Deepest nesting of blocks in a method. Default is 5.\n" +
+    "  -longlines N  Add conditions of N characters now and then. Default is 0, none.\n" +
+    "  -edit P       Percent of the statements that are added, changed or deleted, and of the\n" +
+    "                methods that are moved, in the new tree. Default is 10.\n" +
+    "  -filechurn P  Percent of the files that are added, deleted and renamed each. Default is 2.\n" +
+    "  -diff NAME    Diff algorithm: heckel (default), myers or histogram.\n" +
+    "  -threads N    Nr of threads, 0 means one per processor. Default is 1.\n" +
+    "  -seed N       Seed of the generated source. Default is 42.\n" +
+    "  -dir DIR      Generate the trees in DIR/old and DIR/new and keep them. Default is a\n" +
+    "                temporary directory that is removed afterwards.\n";
+
+  public static void main(String[] args) throws Exception {
+    int files = 1000;
+    int minLines = 10;
+    int maxLines = 2000;
+    int depth = 5;
+    int longLines = 0;
+    int edit = 10;
+    int fileChurn = 2;
+    String diffAlgorithm = "heckel";
+    int threads = 1;
+    long seed = 42;
+    File dir = null;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String option = args[i];
+        String value = i + 1 < args.length ? args[++i] : null;
+        if (value == null) {
+          throw new IllegalArgumentException(option);
+        } else if (option.equals("-files")) {
+          files = Integer.parseInt(value);
+        } else if (option.equals("-minlines")) {
+          minLines = Integer.parseInt(value);
+        } else if (option.equals("-maxlines")) {
+          maxLines = Integer.parseInt(value);
+        } else if (option.equals("-depth")) {
+          depth = Integer.parseInt(value);
+        } else if (option.equals("-longlines")) {
+          longLines = Integer.parseInt(value);
+        } else if (option.equals("-edit")) {
+          edit = Integer.parseInt(value);
+        } else if (option.equals("-filechurn")) {
+          fileChurn = Integer.parseInt(value);
+        } else if (option.equals("-diff") && Diff.getAlgorithm(value) != null) {
+          diffAlgorithm = value;
+        } else if (option.equals("-threads")) {
+          threads = Integer.parseInt(value);
+        } else if (option.equals("-seed")) {
+          seed = Long.parseLong(value);
+        } else if (option.equals("-dir")) {
+          dir = new File(value);
+        } else {
+          throw new IllegalArgumentException(option);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(usage);
+      System.exit(1);
+    }
+
+    boolean keep = dir != null;
+    if (dir == null) {
+      dir = Corpus.tempDir();
+    }
+    File oldRoot = new File(dir, "old");
+    File newRoot = new File(dir, "new");
+
+    try {
+      Corpus corpus = new Corpus(seed);
+      corpus.setMaxDepth(depth);
+      corpus.setLongLineLength(longLines);
+      long start = System.nanoTime();
+      long lines = corpus.writeTreePair(oldRoot, newRoot, files, minLines, maxLines, edit, fileChurn);
+      System.out.println("Generated " + files + " files, " + lines + " lines in " + millis(start) + " ms");
+
+      WorkerPool workers = new WorkerPool(threads);
+
+      // Analysis of the new tree
+      SourceFiles newFiles = new SourceFiles();
+      start = System.nanoTime();
+      newFiles.analyzeSrcDir(newRoot, workers, null, null, null);
+      report("Analysis", newFiles.getNrOfFiles(), newFiles.sumLinesOfCode(), start);
+
+      // Code churn between the trees
+      start = System.nanoTime();
+      SourceFiles oldFiles = new SourceFiles();
+      oldFiles.parseSrcDir(oldRoot);
+      DirectoryChurn directoryChurn = new DirectoryChurn();
+      directoryChurn.pairFiles(oldRoot, oldFiles, newRoot, newFiles, workers);
+      List<Runnable> tasks = new ArrayList<Runnable>();
+      long comparedLines = 0;
+      for (final FilePair pair : directoryChurn.getPairs()) {
+        comparedLines = comparedLines + pair.getNewFile().getLinesOfCode();
+        final String algorithm = diffAlgorithm;
+        tasks.add(new Runnable() {
+          public void run() {
+            try {
+              Diff.forThread(algorithm, null).countChurn(pair.getOldFile(), pair.getNewFile());
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        });
+      }
+      workers.runAll(tasks);
+      report("Churn (" + diffAlgorithm + ")", directoryChurn.getPairs().size(), comparedLines, start);
+      System.out.println("  " + directoryChurn.getRenamedFiles() + " renamed, " + directoryChurn.getAddedFiles().size()
+          + " added, " + directoryChurn.getDeletedFiles().size() + " deleted, code churn " + newFiles.sumCodeChurn());
+
+      workers.shutdown();
+    } finally {
+      if (!keep) {
+        Corpus.deleteTree(dir);
+      }
+    }
+  }
+
+  private static long millis(long start) {
+    return (System.nanoTime() - start) / 1000000;
+  }
+
+  private static void report(String phase, int files, long lines, long start) {
+    double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+    System.out.println(String.format("%s: %d files, %d lines in %d ms, %.0f files/sec, %.0f lines/sec", phase, files,
+        lines, millis(start), files / seconds, lines / seconds));
+  }
+}
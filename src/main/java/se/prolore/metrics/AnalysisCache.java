@@ -0,0 +1,341 @@
+package se.prolore.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// An on-disk cache of the results of ComplexityParser.analyze(), so files that did not
+// change since the last run don't have to be analysed again.
+//
+// Results are keyed by a SHA-1 hash of the file content and the language of the file, the
+// same content gives other results in another language (a .h and a .java copy of it).
+// The size and modification time of each path are remembered too, so an unchanged file is
+// found without reading it. A result with a method name or a path too long to be written
+// (over 64 KB as UTF-8) is not kept.
+// The cache is dropped when its format, the rules of the languages or the charset change, and holds at
+// most maxEntries results; the least recently used ones are evicted first.
+public class AnalysisCache {
+  static final int FORMAT_VERSION = 3;
+  static final int DEFAULT_MAX_ENTRIES = 100000;
+  private static final String MAGIC = "CodeMetrics cache";
+
+  // The results of one analysed file content
+  private static class Result {
+    int LOC, stLOC, ccLOC, trLOC, emLOC;
+    String[] methodNames;
+    int[] methodLines;   // first line, last line, complexity and index of the parent (-1 if none) of each method
+
+    // Copy the results of an analysed file
+    Result(final ComplexityParser parser) {
+      LOC = parser.getLinesOfCode();
+      stLOC = parser.getLinesOfStatements();
+      ccLOC = parser.getLinesOfComments();
+      trLOC = parser.getTrivialLines();
+      emLOC = parser.getEmptyLines();
+      methodNames = new String[parser.getNrOfMethods()];
+      methodLines = new int[4 * parser.getNrOfMethods()];
+      Map<Method, Integer> indexes = new HashMap<Method, Integer>();
+      for (int i = 0; i < parser.getNrOfMethods(); i++) {
+        Method method = parser.getMethod(i);
+        indexes.put(method, i);
+        methodNames[i] = method.getMethodName();
+        methodLines[4 * i] = method.getLineNr();
+        methodLines[4 * i + 1] = method.getLastLineNr();
+        methodLines[4 * i + 2] = method.getComplexity();
+        // The parent of a method comes before it
+        Integer parent = method.getParent() != null ? indexes.get(method.getParent()) : null;
+        methodLines[4 * i + 3] = parent != null ? parent : -1;
+      }
+    }
+
+    Result(final DataInputStream in) throws IOException {
+      LOC = in.readInt();
+      stLOC = in.readInt();
+      ccLOC = in.readInt();
+      trLOC = in.readInt();
+      emLOC = in.readInt();
+      methodNames = new String[in.readInt()];
+      methodLines = new int[4 * methodNames.length];
+      for (int i = 0; i < methodNames.length; i++) {
+        methodNames[i] = in.readUTF();
+        methodLines[4 * i] = in.readInt();
+        methodLines[4 * i + 1] = in.readInt();
+        methodLines[4 * i + 2] = in.readInt();
+        methodLines[4 * i + 3] = in.readInt();
+      }
+    }
+
+    void write(final DataOutputStream out) throws IOException {
+      out.writeInt(LOC);
+      out.writeInt(stLOC);
+      out.writeInt(ccLOC);
+      out.writeInt(trLOC);
+      out.writeInt(emLOC);
+      out.writeInt(methodNames.length);
+      for (int i = 0; i < methodNames.length; i++) {
+        out.writeUTF(methodNames[i]);
+        out.writeInt(methodLines[4 * i]);
+        out.writeInt(methodLines[4 * i + 1]);
+        out.writeInt(methodLines[4 * i + 2]);
+        out.writeInt(methodLines[4 * i + 3]);
+      }
+    }
+
+    // Give the results to a parser of a file with the same content
+    void restore(final ComplexityParser parser) {
+      List<Method> methods = new ArrayList<Method>(methodNames.length);
+      for (int i = 0; i < methodNames.length; i++) {
+        Method method = new Method(methodLines[4 * i], methodLines[4 * i + 1], methodNames[i]);
+        method.setComplexity(methodLines[4 * i + 2]);
+        int parent = methodLines[4 * i + 3];
+        if (parent >= 0 && parent < i) {
+          method.setParent(methods.get(parent));
+        }
+        methods.add(method);
+      }
+      parser.restore(LOC, stLOC, ccLOC, trLOC, emLOC, methods);
+    }
+
+    // Can the result be written to the cache file?
+    boolean canWrite() {
+      for (String name : methodNames) {
+        if (!AnalysisCache.canWrite(name)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  // What a path looked like when its content hash was calculated
+  private static class Stamp {
+    final long size;
+    final long modified;
+    final String hash;
+
+    Stamp(final long size, final long modified, final String hash) {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+    }
+  }
+
+  private final int maxEntries;
+  private final Map<String, Result> results;   // by content hash and language, least recently used first
+  private final Map<String, Stamp> stamps;     // by absolute path, least recently used first
+  private boolean changed = false;
+  private int hits = 0;
+  private int misses = 0;
+
+  AnalysisCache(final int maxEntries) {
+    this.maxEntries = maxEntries;
+    results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(final Map.Entry<String, Result> eldest) {
+        return size() > AnalysisCache.this.maxEntries;
+      }
+    };
+    stamps = new LinkedHashMap<String, Stamp>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(final Map.Entry<String, Stamp> eldest) {
+        return size() > AnalysisCache.this.maxEntries;
+      }
+    };
+  }
+
+  // The rules the results were made with, the same file gives other results in another charset
+  private static String rules() {
+    return FileTypes.getRulesVersion() + ":" + SourceText.getCharset().name();
+  }
+
+  // Load a cache file, an empty cache is returned if there is none or if it is out of date
+  public static AnalysisCache load(final File cacheFile, final int maxEntries) {
+    AnalysisCache cache = new AnalysisCache(maxEntries);
+    if (!cacheFile.isFile()) {
+      return cache;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+      try {
+        if (!in.readUTF().equals(MAGIC) || in.readInt() != FORMAT_VERSION
+            || !in.readUTF().equals(rules())) {
+          return cache;   // made by another version, start over
+        }
+        int nrOfResults = in.readInt();
+        for (int i = 0; i < nrOfResults; i++) {
+          String hash = in.readUTF();
+          cache.results.put(hash, new Result(in));
+        }
+        int nrOfStamps = in.readInt();
+        for (int i = 0; i < nrOfStamps; i++) {
+          String path = in.readUTF();
+          cache.stamps.put(path, new Stamp(in.readLong(), in.readLong(), in.readUTF()));
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Error: Can't read cache " + cacheFile + " (" + e.getMessage() + ")");
+      return new AnalysisCache(maxEntries);
+    }
+    return cache;
+  }
+
+  // Save the cache file, if anything was added since it was loaded
+  public synchronized void save(final File cacheFile) {
+    if (!changed) {
+      return;
+    }
+    try {
+      // Write to a new file first, so a failed write doesn't destroy the old cache
+      File tmpFile = new File(cacheFile.getPath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeUTF(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(rules());
+        out.writeInt(results.size());
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+          out.writeUTF(entry.getKey());
+          entry.getValue().write(out);
+        }
+        out.writeInt(stamps.size());
+        for (Map.Entry<String, Stamp> entry : stamps.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue().size);
+          out.writeLong(entry.getValue().modified);
+          out.writeUTF(entry.getValue().hash);
+        }
+      } finally {
+        out.close();
+      }
+      if (!tmpFile.renameTo(cacheFile)) {
+        cacheFile.delete();
+        if (!tmpFile.renameTo(cacheFile)) {
+          throw new IOException("Can't rename " + tmpFile);
+        }
+      }
+      changed = false;
+    } catch (IOException e) {
+      System.err.println("Error: Can't write cache " + cacheFile + " (" + e.getMessage() + ")");
+    }
+  }
+
+  // Analyse a file, or take its results from the cache if its content was analysed before.
+  // Returns true if the results came from the cache.
+  public boolean analyze(final ComplexityParser parser) {
+    File file = parser.getSourceFile();
+    String path = file.getAbsolutePath();
+    long size = file.length();
+    long modified = file.lastModified();
+    String hash = null;
+    SourceText text = null;
+
+    synchronized (this) {
+      Stamp stamp = stamps.get(path);
+      if (stamp != null && stamp.size == size && stamp.modified == modified) {
+        // Same size and time as before, take it as the same content without reading it
+        hash = stamp.hash;
+        Result result = results.get(resultKey(hash, parser));
+        if (result != null) {
+          result.restore(parser);
+          hits++;
+          return true;
+        }
+      }
+    }
+
+    if (hash == null) {
+      // Read the file once, to hash it and, if it is not in the cache, to analyse it
+      try {
+        text = SourceText.read(file);
+      } catch (IOException e) {
+        parser.analyze();   // let the parser report the error
+        return false;
+      }
+      hash = contentHash(text);
+    }
+
+    synchronized (this) {
+      Result result = results.get(resultKey(hash, parser));
+      if (result != null) {
+        // The same content was seen at another path or time
+        if (canWrite(path)) {
+          stamps.put(path, new Stamp(size, modified, hash));
+          changed = true;
+        }
+        result.restore(parser);
+        hits++;
+        return true;
+      }
+    }
+
+    if (text != null) {
+      parser.analyze(text);
+    } else {
+      parser.analyze();   // the stamp matched but its result was evicted
+    }
+
+    Result result = new Result(parser);
+    synchronized (this) {
+      if (result.canWrite() && canWrite(path)) {
+        results.put(resultKey(hash, parser), result);
+        stamps.put(path, new Stamp(size, modified, hash));
+        changed = true;
+      }
+      misses++;
+    }
+    return false;
+  }
+
+  private static String resultKey(final String hash, final ComplexityParser parser) {
+    return hash + ":" + parser.getFileType().getName();
+  }
+
+  // Is the text short enough for writeUTF, at most 65535 bytes in modified UTF-8?
+  static boolean canWrite(final String text) {
+    if (text.length() <= 65535 / 3) {
+      return true;   // even if every char takes 3 bytes
+    }
+    long bytes = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      bytes = bytes + (c >= 0x0001 && c <= 0x007F ? 1 : (c <= 0x07FF ? 2 : 3));
+    }
+    return bytes <= 65535;
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  // SHA-1 of the file content, as a hex string
+  static String contentHash(final SourceText text) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(text.getContent());
+    StringBuilder hex = new StringBuilder(40);
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
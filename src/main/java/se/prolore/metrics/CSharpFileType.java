@@ -0,0 +1,32 @@
+package se.prolore.metrics;
+
+// C# has the comments, literals and blocks of Java, so only the keywords and operators differ
+public class CSharpFileType extends JavaFileType {
+
+	private static final KeywordTable CSHARP_KEYWORDS = new KeywordTable()
+		.add(SELECTION, "if", "else", "case", "default")
+		.add(LOOP, "for", "foreach", "while", "do", "break", "continue")
+		.add(OPERATOR, "&&", "||", "?", ":", "??")
+		.add(EXCEPTION, "catch", "try", "finally", "throw")
+		.add(DECLARATION, "class", "interface", "enum", "struct", "record", "namespace");
+
+	// ?? is a condition, ?. and => are one token so their characters are not taken for one
+	private static final String[] TWO_CHAR_OPERATORS = {
+		"&&", "||", "::", "->", "==", "!=", "<=", ">=", "++", "--",
+		"+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "??", "?.", "=>"
+	};
+
+	public CSharpFileType() {
+		super(CSHARP_KEYWORDS);
+	}
+
+	@Override
+	public String getName() {
+		return "cs";
+	}
+
+	@Override
+	public Lexer newLexer() {
+		return new JavaLexer(TWO_CHAR_OPERATORS);
+	}
+}
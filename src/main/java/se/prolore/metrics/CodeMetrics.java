@@ -1,23 +1,48 @@
 package se.prolore.metrics;
 
 // CodeMetrics
-// TODO: Support excluding files or folders. This is useful if parts of your source code was generated by a tool.
-// -e PATH1_TO_EXCLUDE;PATH2_TO_EXCLUDE
-// TODO: Support for defining components/modules
-// -m module1=PATH1;PATH2 module2=PATH3
-// TODO: Support for Java, C#, C++, XML
 // TODO: Output to .csv file
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CodeMetrics {
   private boolean calculateCodeChurn = false;
+  private boolean multiPass = false;
+  private WorkerPool workers = new WorkerPool(1);
+  private String diffAlgorithm = "heckel";
+  private File diffOutput = null;
+  private File cacheFile = null;
+  private int cacheSize = AnalysisCache.DEFAULT_MAX_ENTRIES;
+  private AnalysisCache cache = null;
   private SourceFiles oldFiles = null;
   private SourceFiles newFiles = null;
   private File oldFile = null;
   private File newFile = null;
+  private File sourceDir = null;
+  private boolean churnOfDirectories = false;
+  private File statsFile = null;
+  private int slowest = RunStats.DEFAULT_SLOWEST;
+  private boolean jfr = false;
+  private RunStats stats = null;
+  private File ndjsonFile = null;
+  private File methodsFile = null;
+  private int topMethods = 0;
+  private int servePort = -1;
+  private boolean watch = false;
+  private List<String> includes = new ArrayList<String>();
+  private boolean console = true;   // false for a run of the server, which only answers with JSON
+  private List<String> excludes = new ArrayList<String>();
+  private boolean gitignore = false;
+  private Modules modules = null;
+  private List<String> languages = new ArrayList<String>();
   
   static private String usage =
     "Usage: CodeMetrics file [-options]\n" +
@@ -26,146 +51,418 @@ public class CodeMetrics {
     "  (to traverse a directory and calculate metrics for all source files)\n" +
     "or  CodeMetrics oldfile newfile [-options]\n" +
     "  (to calculate metrics including code churn)\n" +
+    "or  CodeMetrics oldpath newpath [-options]\n" +
+    "  (to calculate metrics including code churn between two directories)\n" +
+    "or  CodeMetrics -serve PORT [-options]\n" +
+    "  (to keep running and answer requests on http://127.0.0.1:PORT/, see MetricsServer)\n" +
     "\n" +
     "where options include:\n" +
     "  -ignoremove   Igmore moved code. Default behaviour is to count moved code as changed.\n" +
-    "  -verbose      Output more detailed metrics\n";
+    "  -verbose      Output more detailed metrics\n" +
+    "  -multipass    Count the lines, find the methods and count their complexity in separate passes\n" +
+    "                over each file (slower, to cross-check the results)\n" +
+    "  -threads N    Analyse N files at the same time, 0 means one per processor. Default is 1.\n" +
+    "  -diff NAME    Diff algorithm for code churn: heckel (default), myers or histogram.\n" +
+    "                Use myers or histogram to get the same numbers as git diff.\n" +
+    "  -diffout FILE Write the changed lines to FILE as a unified diff. Default is to only count them.\n" +
+    "  -cache FILE   Keep the results in FILE and only analyse the files that changed since the last run\n" +
+    "  -cachesize N  Nr of files to keep in the cache. Default is " + AnalysisCache.DEFAULT_MAX_ENTRIES + ".\n" +
+    "  -stats FILE   Write the time, files, lines and bytes of each phase, the peak heap and the\n" +
+    "                slowest files to FILE as JSON\n" +
+    "  -slowest N    Nr of slowest files in the -stats summary. Default is " + RunStats.DEFAULT_SLOWEST + ".\n" +
+    "  -jfr          Also send the phases and files as JFR events to a running flight recording\n" +
+    "  -ndjson FILE  Also write the report to FILE as newline delimited JSON, one object per file\n" +
+    "  -methods FILE Write the file, signature, first and last line and complexity of each method to FILE,\n" +
+    "                and the first line of the method it is declared in, for one in an anonymous or local class\n" +
+    "  -top K        Print the K most complex methods after the totals. Without K, " + TopMethods.DEFAULT_K + ".\n" +
+    "  -watch        Keep running after the report of a directory, and report the files that change\n" +
+    "                and the new totals on the console\n" +
+    "  -e PATTERNS   Leave out the files and directories that match one of the patterns, e.g.\n" +
+    "                -e \"target;generated-sources;src/test/**\". The walk does not go into them.\n" +
+    "                A pattern is a glob, or a regular expression after regex:. A glob without\n" +
+    "                a / matches a name at any depth, others the path below the directory.\n" +
+    "  -i PATTERNS   Only take the source files that match one of the patterns, e.g. -i \"*Impl.java\"\n" +
+    "  -m MODULES    Add up the files of each module, e.g. -m \"core=src/core;src/util gui=src/gui\".\n" +
+    "                The paths are below the directory, a file is in the module of its longest path.\n" +
+    "  -lang NAMES   Analyse the files of these languages, e.g. -lang java,cs. Default is java only.\n" +
+    "                The languages are " + FileTypes.getNames() + " (.java; .cs; .cpp, .cc, .cxx, .c, .h, .hpp ...; .xml).\n" +
+    "  -gitignore    Leave out what the .gitignore files in the directories leave out\n" +
+    "  -encoding CS  Charset of the source files, e.g. UTF-8. Default is the charset of the platform.\n";
 
   CodeMetrics() {
     oldFiles = new SourceFiles();
     newFiles = new SourceFiles();
   }
 
+  // A run for one request to the server, on the workers and the cache of the server
+  CodeMetrics(final WorkerPool workers, final AnalysisCache cache, final String diffAlgorithm) {
+    this();
+    this.workers = workers;
+    this.cache = cache;
+    this.diffAlgorithm = diffAlgorithm;
+    stats = new RunStats(0, false);
+    console = false;
+  }
+
   public static void main(final String[] args) {
     CodeMetrics codeMetrics = new CodeMetrics();
 
     codeMetrics.parseCommandLine(args);
+    RunStats stats = codeMetrics.stats;
+    StreamingReport report = null;
+    if (codeMetrics.cacheFile != null && !codeMetrics.multiPass) {
+      stats.startPhase("cache load");
+      codeMetrics.cache = AnalysisCache.load(codeMetrics.cacheFile, codeMetrics.cacheSize);
+    }
+
+    if (codeMetrics.servePort >= 0) {
+      codeMetrics.serve();
+      return;
+    }
+
+    if (codeMetrics.multiPass) {
+      // Calculate Cyclomatic Complexity
+      stats.startPhase("complexity");
+      codeMetrics.countComplexity(codeMetrics.newFiles);
+
+      // Count LOC (Lines of Code)
+      stats.startPhase("lines");
+      codeMetrics.countLines(codeMetrics.newFiles);
+    }
+    else if (codeMetrics.sourceDir != null && !codeMetrics.churnOfDirectories && !codeMetrics.watch) {
+      // Count LOC and calculate Cyclomatic Complexity while the directory is walked,
+      // each file is reported when it is done and then let go
+      stats.startPhase("walk, analysis and report");
+      report = codeMetrics.createReport();
+      codeMetrics.newFiles.analyzeSrcDir(codeMetrics.sourceDir, codeMetrics.workers, codeMetrics.cache, stats, report);
+    }
+    else if (codeMetrics.sourceDir != null) {
+      // Count LOC and calculate Cyclomatic Complexity while the directory is walked,
+      // the files are kept for the code churn or to be watched
+      stats.startPhase("walk and analysis");
+      codeMetrics.newFiles.analyzeSrcDir(codeMetrics.sourceDir, codeMetrics.workers, codeMetrics.cache, stats, null);
+    }
+    else {
+      // Count LOC and calculate Cyclomatic Complexity in one pass
+      stats.startPhase("analysis");
+      codeMetrics.analyze(codeMetrics.newFiles);
+    }
 
     // Calculate Code Churn
-    if (codeMetrics.calculateCodeChurn) {
+    if (codeMetrics.churnOfDirectories) {
+      codeMetrics.countDirectoryChurn();
+    }
+    else if (codeMetrics.calculateCodeChurn) {
+      stats.startPhase("diff");
       codeMetrics.countChurn(codeMetrics.oldFiles, codeMetrics.newFiles);
     }
 
-    // Calculate Cyclomatic Complexity
-    codeMetrics.countComplexity(codeMetrics.newFiles);
+    if (codeMetrics.cache != null) {
+      stats.startPhase("cache save");
+      codeMetrics.cache.save(codeMetrics.cacheFile);
+    }
+
+    stats.startPhase("report");
+    if (report == null) {
+      report = codeMetrics.createReport();
+      codeMetrics.reportFiles(report, 0);
+    }
+    report.close();
+    stats.endPhase();
+
+    if (codeMetrics.statsFile != null) {
+      stats.write(codeMetrics.statsFile, codeMetrics.workers.getThreads(), codeMetrics.cache);
+    }
 
-    // Count LOC (Lines of Code)
-    codeMetrics.countLines(codeMetrics.newFiles);
+    if (codeMetrics.watch) {
+      codeMetrics.watch();
+    }
+    codeMetrics.workers.shutdown();
+  }
 
-    codeMetrics.printReport();
-    codeMetrics.writeReport();
+  // The report sinks: the console, out.csv and the ones asked for with -ndjson, -methods and -top
+  private StreamingReport createReport() {
+    List<ReportSink> sinks = new ArrayList<ReportSink>();
+    sinks.add(new ConsoleReport(System.out, calculateCodeChurn));
+    sinks.add(new CsvReport(new File("out.csv"), calculateCodeChurn));
+    if (ndjsonFile != null) {
+      sinks.add(new NdjsonReport(ndjsonFile, calculateCodeChurn));
+    }
+    if (methodsFile != null) {
+      sinks.add(new MethodReport(methodsFile));
+    }
+    if (topMethods > 0) {
+      // After the console report, so the methods come after the totals
+      sinks.add(new TopMethods(System.out, topMethods));
+    }
+    return new StreamingReport(sinks);
   }
 
-  private void writeReport() {
-    BufferedWriter out = null;
+  // Report the files kept in newFiles, when they were not reported while they were analysed.
+  // The first file gets number firstNr in the report, the number after the last is returned.
+  int reportFiles(final StreamingReport report, final int firstNr) {
     try {
-      FileWriter fstream = new FileWriter("out.csv");
-      out = new BufferedWriter(fstream);
-      out.write("File Name;");
-      out.write("Total Lines of Code;"); 
-      out.write("Executable Lines;");
-      out.write("Lines of Comments;"); 
-      out.write("Trivial Lines;"); 
-      out.write("Empty Lines;"); 
-      out.write("Code Complexity;");
-      out.write("Number of Methods;");
-      out.write("Average Method Complexity;");
-      out.write("Comment Percentage;");
-      if (calculateCodeChurn) {
-        out.write("Added Lines of Code;");
-        out.write("Changed Lines of Code;");
-        out.write("Deleted Lines of Code;");
-        out.write("Code Churn;");
-      }
-      out.write(System.getProperty("line.separator"));
-      
       for (int i = 0; i < newFiles.getNrOfFiles(); i++) {
-        out.write(newFiles.getParser(i).getSourceFile().getAbsolutePath() + ";"); 
-        out.write(String.valueOf(newFiles.getParser(i).getLinesOfCode()) + ";"); 
-        out.write(String.valueOf(newFiles.getParser(i).getLinesOfStatements()) + ";");
-        out.write(String.valueOf(newFiles.getParser(i).getLinesOfComments()) + ";"); 
-        out.write(String.valueOf(newFiles.getParser(i).getTrivialLines()) + ";");
-        out.write(String.valueOf(newFiles.getParser(i).getEmptyLines()) + ";");
-        out.write(String.valueOf(newFiles.getParser(i).getComplexity()) + ";");
-        out.write(String.valueOf(newFiles.getParser(i).getNrOfMethods()) + ";");
-        out.write(String.valueOf(newFiles.getParser(i).getAvgComplexity()) + ";");
-        out.write(String.valueOf((100 * newFiles.getParser(i).getLinesOfComments()) / newFiles.getParser(i).getLinesOfCode() + "%") + ";");
-        if (calculateCodeChurn) {
-          out.write(String.valueOf(newFiles.getParser(i).getAddedLines()) + ";");
-          out.write(String.valueOf(newFiles.getParser(i).getChangedLines()) + ";");
-          out.write(String.valueOf(newFiles.getParser(i).getDeletedLines()) + ";");
-          out.write(String.valueOf(newFiles.getParser(i).getCodeChurn()) + ";");
-        }
-        out.write(System.getProperty("line.separator"));
+        report.add(firstNr + i, newFiles.getParser(i));
       }
-      
-      //Close the output stream
-      out.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
-    catch (Exception e) {
+    for (int i = 0; i < newFiles.getNrOfDeletedFiles(); i++) {
+      report.addDeleted(newFiles.getDeletedFile(i));
+    }
+    return firstNr + newFiles.getNrOfFiles();
+  }
+
+  // Save the cache when the JVM exits, for the modes that run until they are stopped
+  private void saveCacheOnExit() {
+    if (cache != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        public void run() {
+          cache.save(cacheFile);
+        }
+      }, "metrics-cache-save"));
+    }
+  }
+
+  // Answer requests until the server is stopped. The cache is saved when the JVM exits.
+  private void serve() {
+    saveCacheOnExit();
+    stats.endPhase();
+    try {
+      MetricsServer server = new MetricsServer(servePort, workers, cache, diffAlgorithm);
+      server.start();
+      System.out.println("Listening on http://127.0.0.1:" + server.getPort() + "/");
+      server.awaitStop();
+    } catch (IOException e) {
       System.err.println("Error: " + e.getMessage());
-      return;
+      System.exit(1);
     }
+    workers.shutdown();
   }
 
-  private void printReport() {
-    for (int i = 0; i < newFiles.getNrOfFiles(); i++) {
-      System.out.println(newFiles.getParser(i).getSourceFile().getAbsolutePath());
-      System.out.println("\t Total Lines of Code:       " + newFiles.getParser(i).getLinesOfCode()); 
-      System.out.println("\t Executable Lines:          " + newFiles.getParser(i).getLinesOfStatements());
-      System.out.println("\t Lines of Comments:         " + newFiles.getParser(i).getLinesOfComments()); 
-      System.out.println("\t Trivial Lines:             " + newFiles.getParser(i).getTrivialLines()); 
-      System.out.println("\t Empty Lines:               " + newFiles.getParser(i).getEmptyLines()); 
-      System.out.println("\t Code Complexity:           " + newFiles.getParser(i).getComplexity());
-      System.out.println("\t Number of Methods:         " + newFiles.getParser(i).getNrOfMethods());
-      System.out.println("\t Average Method Complexity: " + newFiles.getParser(i).getAvgComplexity());
-      System.out.println("\t Comment Percentage:        " + (100 * newFiles.getParser(i).getLinesOfComments()) / newFiles.getParser(i).getLinesOfCode() + "%");
-      // Recommendations: Code where the percentage of comment is lower than 20% should be more commented. 
-      // However overly commented code (>40%) is more difficult to read.
-      if (calculateCodeChurn) {
-        System.out.println("\t Added Lines of Code:       " + newFiles.getParser(i).getAddedLines());
-        System.out.println("\t Changed Lines of Code:     " + newFiles.getParser(i).getChangedLines());
-        System.out.println("\t Deleted Lines of Code:     " + newFiles.getParser(i).getDeletedLines());
-        System.out.println("\t Code Churn:                " + newFiles.getParser(i).getCodeChurn());
-      }
-    }
-    System.out.println("Total (Aggregated Metrics)");
-    System.out.println("\t Total Lines of Code:     " + newFiles.sumLinesOfCode()); 
-    System.out.println("\t Executable Lines:        " + newFiles.sumLinesOfStatements());
-    System.out.println("\t Lines of Comments:       " + newFiles.sumLinesOfComments()); 
-    System.out.println("\t Trivial Lines:           " + newFiles.sumTrivialLines()); 
-    System.out.println("\t Empty Lines:             " + newFiles.sumEmptyLines()); 
-    System.out.println("\t Code Complexity:         " + newFiles.sumComplexity());
-    System.out.println("\t Number of Files:         " + newFiles.getNrOfFiles());
-    System.out.println("\t Average File Complexity: " + newFiles.sumAvgComplexity());
-    System.out.println("\t Comment Percentage:      " + (100 * newFiles.sumLinesOfComments()) / newFiles.sumLinesOfCode() + "%");
-    // Recommendations: Code where the percentage of comment is lower than 20% should be more commented. 
-    // However overly commented code (>40%) is more difficult to read.  
-    if (calculateCodeChurn) {
-      System.out.println("\t Added Lines of Code:     " + newFiles.sumAddedLines());
-      System.out.println("\t Changed Lines of Code:   " + newFiles.sumChangedLines());
-      System.out.println("\t Deleted Lines of Code:   " + newFiles.sumDeletedLines());
-      System.out.println("\t Code Churn:              " + newFiles.sumCodeChurn());
+  // Report the changes to the files in the directory until the JVM is stopped.
+  // The cache is saved when the JVM exits.
+  private void watch() {
+    saveCacheOnExit();
+    try {
+      SourceWatcher watcher = new SourceWatcher(sourceDir, newFiles, workers, cache, System.out);
+      System.out.println("Watching " + sourceDir.getAbsolutePath());
+      watcher.run();
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  // Metrics of a source file or of all source files in a directory, as main calculates them.
+  // False if path is neither.
+  boolean analyzePath(final File path) {
+    if (path.isDirectory()) {
+      newFiles.parseSrcDir(path);
+    }
+    else if (SourceFiles.isSourceFile(path)) {
+      newFiles.addSrcFile(path);
+    }
+    else {
+      return false;
     }
+    analyze(newFiles);
+    return true;
+  }
+
+  // Metrics including code churn between two source files or two directories, as main
+  // calculates them. False if the paths are not two files or two directories.
+  boolean churnPaths(final File oldPath, final File newPath) {
+    calculateCodeChurn = true;
+    if (oldPath.isDirectory() && newPath.isDirectory()) {
+      oldFile = oldPath;
+      newFile = newPath;
+      oldFiles.parseSrcDir(oldPath);
+      newFiles.parseSrcDir(newPath);
+      analyze(newFiles);
+      countDirectoryChurn();
+    }
+    else if (SourceFiles.isSourceFile(oldPath) && SourceFiles.isSourceFile(newPath)) {
+      oldFiles.addSrcFile(oldPath);
+      newFiles.addSrcFile(newPath);
+      analyze(newFiles);
+      countChurn(oldFiles, newFiles);
+    }
+    else {
+      return false;
+    }
+    return true;
   }
 
   private void parseCommandLine(final String[] args) {
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("-multipass")) {
+        multiPass = true;
+      }
+      else if (arg.equals("-threads") && i + 1 < args.length) {
+        try {
+          workers = new WorkerPool(Integer.parseInt(args[++i]));
+        } catch (NumberFormatException e) {
+          System.out.println(usage);
+          System.exit(1);
+        }
+      }
+      else if (arg.equals("-diff") && i + 1 < args.length && Diff.getAlgorithm(args[i + 1]) != null) {
+        diffAlgorithm = args[++i];
+      }
+      else if (arg.equals("-cache") && i + 1 < args.length) {
+        cacheFile = new File(args[++i]);
+      }
+      else if (arg.equals("-cachesize") && i + 1 < args.length) {
+        try {
+          cacheSize = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException e) {
+          System.out.println(usage);
+          System.exit(1);
+        }
+      }
+      else if (arg.equals("-diffout") && i + 1 < args.length) {
+        diffOutput = new File(args[++i]);
+      }
+      else if (arg.equals("-stats") && i + 1 < args.length) {
+        statsFile = new File(args[++i]);
+      }
+      else if (arg.equals("-slowest") && i + 1 < args.length) {
+        try {
+          slowest = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException e) {
+          System.out.println(usage);
+          System.exit(1);
+        }
+      }
+      else if (arg.equals("-ndjson") && i + 1 < args.length) {
+        ndjsonFile = new File(args[++i]);
+      }
+      else if (arg.equals("-methods") && i + 1 < args.length) {
+        methodsFile = new File(args[++i]);
+      }
+      else if (arg.equals("-top")) {
+        topMethods = TopMethods.DEFAULT_K;
+        if (i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+          topMethods = Integer.parseInt(args[++i]);
+        }
+      }
+      else if (arg.equals("-serve") && i + 1 < args.length) {
+        try {
+          servePort = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException e) {
+          System.out.println(usage);
+          System.exit(1);
+        }
+      }
+      else if (arg.equals("-watch")) {
+        watch = true;
+      }
+      else if (arg.equals("-e") && i + 1 < args.length) {
+        excludes.add(args[++i]);
+      }
+      else if (arg.equals("-i") && i + 1 < args.length) {
+        includes.add(args[++i]);
+      }
+      else if (arg.equals("-m") && i + 1 < args.length) {
+        if (modules == null) {
+          modules = new Modules();
+        }
+        try {
+          modules.define(args[++i]);
+        } catch (IllegalArgumentException e) {
+          System.out.println("ERROR: " + e.getMessage());
+          System.exit(1);
+        }
+      }
+      else if (arg.equals("-lang") && i + 1 < args.length) {
+        for (String language : args[++i].split(",")) {
+          languages.add(language.trim());
+        }
+      }
+      else if (arg.equals("-gitignore")) {
+        gitignore = true;
+      }
+      else if (arg.equals("-jfr")) {
+        jfr = true;
+      }
+      else if (arg.equals("-encoding") && i + 1 < args.length) {
+        try {
+          SourceText.setCharset(Charset.forName(args[++i]));
+        } catch (IllegalArgumentException e) {
+          System.out.println("ERROR: Unknown charset " + args[i]);
+          System.exit(1);
+        }
+      }
+      else if (arg.startsWith("-")) {
+        System.out.println(usage);
+        System.exit(1);
+      }
+      else {
+        paths.add(arg);
+      }
+    }
+
+    // Compile the filter once, before any walk
+    if (!includes.isEmpty() || !excludes.isEmpty() || gitignore) {
+      try {
+        SourceWalker.setFilter(PathFilter.compile(includes, excludes, gitignore));
+      } catch (IllegalArgumentException e) {
+        System.out.println("ERROR: Bad pattern (" + e.getMessage() + ")");
+        System.exit(1);
+      }
+    }
+
+    if (!languages.isEmpty()) {
+      try {
+        FileTypes.setLanguages(languages);
+      } catch (IllegalArgumentException e) {
+        System.out.println("ERROR: " + e.getMessage());
+        System.exit(1);
+      }
+    }
+
+    // The files get their module when they are found
+    SourceFiles.setModules(modules);
+
+    // Directories given on the command line are walked from here on
+    stats = new RunStats(slowest, jfr);
+    stats.startPhase("walk");
+
+    // The server gets its paths with each request
+    if (servePort >= 0 && paths.size() == 0) {
+      return;
+    }
+    // Only one directory can be watched
+    else if (watch && (multiPass || paths.size() != 1 || !new File(paths.get(0)).isDirectory())) {
+      System.out.println(usage);
+      System.exit(1);
+    }
     // Check if we have a parameter
-    if (args.length == 0) {  
+    else if (paths.size() == 0) {  
       System.out.println(usage);
       System.exit(1);
     }
     // One parameter (Run Code Metrics without Code Churn)
-    else if (args.length == 1) {
-      newFile = new File(args[0]);
+    else if (paths.size() == 1) {
+      newFile = new File(paths.get(0));
 
       if (newFile.isDirectory()) {
         // One directory
-        newFiles.parseSrcDir(newFile);
+        if (multiPass) {
+          newFiles.parseSrcDir(newFile);
+        }
+        else {
+          // The files are found and analysed at the same time
+          sourceDir = newFile;
+        }
       }
       else if (newFile.isFile()) {
         // One file
-        newFiles.addSrcFile(newFile);        
+        addSrcFile(newFiles, newFile);
       }
       else {
         System.out.println(usage);
@@ -173,18 +470,27 @@ public class CodeMetrics {
       }
     }
     // Two parameters calculate all Code Metrics
-    else if (args.length == 2) {
-      oldFile = new File(args[0]);
-      newFile = new File(args[1]);
+    else if (paths.size() == 2) {
+      oldFile = new File(paths.get(0));
+      newFile = new File(paths.get(1));
       calculateCodeChurn = true;
 
       if (oldFile.isDirectory() && newFile.isDirectory()) {
         // Two directories
+        churnOfDirectories = true;
+        oldFiles.parseSrcDir(oldFile);
+        if (multiPass) {
+          newFiles.parseSrcDir(newFile);
+        }
+        else {
+          // The new files are found and analysed at the same time
+          sourceDir = newFile;
+        }
       }
       else if (oldFile.isFile() && newFile.isFile()) {
         // Two files
-        oldFiles.addSrcFile(oldFile);
-        newFiles.addSrcFile(newFile);
+        addSrcFile(oldFiles, oldFile);
+        addSrcFile(newFiles, newFile);
       }
       else {
         System.out.println(usage);
@@ -193,24 +499,165 @@ public class CodeMetrics {
     }
   }
 
+  // A file given on the command line, it must be of one of the languages
+  private static void addSrcFile(final SourceFiles srcFiles, final File file) {
+    if (!srcFiles.addSrcFile(file)) {
+      System.out.println("ERROR: File type is not supported: " + file.getName() + ". Supported languages are "
+          + FileTypes.getNames() + " (java by default, the others with -lang).");
+      System.exit(1);
+    }
+  }
+
   public void countChurn(final SourceFiles oldFiles, final SourceFiles newFiles) {
+    List<FilePair> pairs = new ArrayList<FilePair>();
     for (int i = 0; i < newFiles.getNrOfFiles(); i++) {
-      Diff d = new Diff();
-      d.countChurn(oldFiles.getParser(i), newFiles.getParser(i));
+      pairs.add(new FilePair(oldFiles.getParser(i), newFiles.getParser(i)));
+    }
+    countChurn(pairs);
+  }
+
+  public void countChurn(final List<FilePair> pairs) {
+    // With -diffout each comparison writes to its own buffer, which is written to the file in pair
+    // order as soon as the comparisons before it are done, so the whole diff is never in memory
+    OrderedWriter opened = null;
+    if (diffOutput != null) {
+      try {
+        opened = new OrderedWriter(new BufferedWriter(new FileWriter(diffOutput)), pairs.size());
+      } catch (IOException e) {
+        System.err.println("Error: " + e.getMessage());
+      }
+    }
+    final OrderedWriter output = opened;
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    for (int i = 0; i < pairs.size(); i++) {
+      final int index = i;
+      final FilePair pair = pairs.get(i);
+      tasks.add(new Runnable() {
+        public void run() {
+          StringWriter buffer = null;
+          DiffSink sink = null;
+          if (output != null) {
+            buffer = new StringWriter();
+            sink = new UnifiedDiffWriter(new PrintWriter(buffer));
+          }
+          long start = System.nanoTime();
+          // Each worker thread compares its pairs with the same Diff, its arrays are reused
+          Diff d = Diff.forThread(diffAlgorithm, sink);
+          try {
+            d.countChurn(pair.getOldFile(), pair.getNewFile());
+          } catch (IOException e) {
+            throw new RuntimeException("Diff can't read file: " + e.getMessage(), e);
+          } finally {
+            if (output != null) {
+              output.write(index, buffer.toString());   // also if it failed, the pairs after it go on
+            }
+          }
+          stats.compared(pair, start, d.getLinesCompared());
+        }
+      });
+    }
+    try {
+      workers.runAll(tasks);
+    } finally {
+      if (output != null) {
+        try {
+          output.close();
+        } catch (IOException e) {
+          System.err.println("Error: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  // Code churn between the old and the new directory.
+  // Expects the new files to be analysed already.
+  public void countDirectoryChurn() {
+    stats.startPhase("pairing");
+    DirectoryChurn directoryChurn = new DirectoryChurn();
+    directoryChurn.pairFiles(oldFile, oldFiles, newFile, newFiles, workers);
+
+    stats.startPhase("diff");
+    countChurn(directoryChurn.getPairs());
+
+    // All lines of an added file are added lines
+    for (ComplexityParser addedFile : directoryChurn.getAddedFiles()) {
+      addedFile.setAddedLines(addedFile.getLinesOfCode());
+    }
+
+    // All lines of a deleted file are deleted lines
+    stats.startPhase("deleted files");
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    for (final ComplexityParser deletedFile : directoryChurn.getDeletedFiles()) {
+      tasks.add(new Runnable() {
+        public void run() {
+          long start = System.nanoTime();
+          deletedFile.countLines();
+          stats.analyzed(deletedFile, start);
+          deletedFile.setDeletedLines(deletedFile.getLinesOfCode());
+        }
+      });
+    }
+    workers.runAll(tasks);
+    for (ComplexityParser deletedFile : directoryChurn.getDeletedFiles()) {
+      newFiles.addDeletedFile(deletedFile);
+    }
+
+    if (console) {
+      System.out.println(">>>> " + directoryChurn.getPairs().size() + " files compared (" + directoryChurn.getRenamedFiles()
+          + " renamed), " + directoryChurn.getAddedFiles().size() + " added, " + directoryChurn.getDeletedFiles().size()
+          + " deleted.");
     }
   }
   
   public void countComplexity(final SourceFiles srcFiles) {
+    List<Runnable> tasks = new ArrayList<Runnable>();
     for (int i = 0; i < srcFiles.getNrOfFiles(); i++) {
-      srcFiles.getParser(i).parseMethods();
-      srcFiles.getParser(i).countComplexity();
+      final ComplexityParser parser = srcFiles.getParser(i);
+      tasks.add(new Runnable() {
+        public void run() {
+          long start = System.nanoTime();
+          parser.parseMethods();
+          parser.countComplexity();
+          stats.analyzed(parser, start);
+        }
+      });
     }
+    workers.runAll(tasks);
   }
 
   public void countLines(final SourceFiles srcFiles) {
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    for (int i = 0; i < srcFiles.getNrOfFiles(); i++) {
+      final ComplexityParser parser = srcFiles.getParser(i);
+      tasks.add(new Runnable() {
+        public void run() {
+          long start = System.nanoTime();
+          parser.countLines();
+          stats.analyzed(parser, start);
+        }
+      });
+    }
+    workers.runAll(tasks);
+  }
+
+  public void analyze(final SourceFiles srcFiles) {
+    List<Runnable> tasks = new ArrayList<Runnable>();
     for (int i = 0; i < srcFiles.getNrOfFiles(); i++) {
-      srcFiles.getParser(i).countLines();
+      final ComplexityParser parser = srcFiles.getParser(i);
+      tasks.add(new Runnable() {
+        public void run() {
+          long start = System.nanoTime();
+          if (cache != null) {
+            cache.analyze(parser);
+          }
+          else {
+            parser.analyze();
+          }
+          stats.analyzed(parser, start);
+        }
+      });
     }
+    workers.runAll(tasks);
   }
 }
 
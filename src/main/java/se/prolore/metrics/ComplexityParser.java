@@ -1,11 +1,6 @@
 package se.prolore.metrics;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,88 +21,206 @@ public class ComplexityParser {
 	  private int chLOC = 0; // Changed Lines of Code
 	  private int dlLOC = 0; // Deleted Lines of Code
 	  private File sourceFile;
-	  private JavaFileType filetype;
+	  private String module = null; // With -m, the module the file belongs to
+	  private FileType filetype;
+	  private final LineState lineState; // carries comments and text blocks from one line to the next
 	  
 	  private ArrayList<Method> methodList = null;
 	  
 	  public ComplexityParser(File sourceFile){
 		this.sourceFile = sourceFile;
 		methodList = new ArrayList<Method>();
-		filetype = new JavaFileType();
+		// A file of no known language, given by name, is taken as Java
+		filetype = FileTypes.forFile(sourceFile);
+		if (filetype == null) {
+			filetype = FileTypes.JAVA;
+		}
+		lineState = new LineState(filetype.newLexer());
 		  
 	  }
 	  
 	// Count Lines Of Code
 	  public void countLines() {
+	    resetLines();
 	    try{
-	      FileInputStream fStream = new FileInputStream(sourceFile.getAbsolutePath());
-	      DataInputStream dStream = new DataInputStream(fStream);
-	      BufferedReader bReader = new BufferedReader(new InputStreamReader(dStream));
-	      String strLine;
+	      SourceText text = SourceText.read(sourceFile);
+	      SourceLine line = new SourceLine();
+	      SourceLine trimmed = new SourceLine();
+	      lineState.reset();
+	      lineState.setListener(null);
 
 	      //Read File Line By Line
-	      while ((strLine = bReader.readLine()) != null) {
-	        strLine = strLine.trim();
+	      while (text.nextLine(line)) {
+	        lineState.scan(line);
+	        trimmed.setTrimmed(line, 0, line.length());
+	        countLine(trimmed);
+	      }
+	    }catch (Exception e) {
+	      System.err.println("Error: " + e.getMessage());
+	    }
+	  }
+	  
+	  // Start counting the lines again, the parser may be used for the same file more than once
+	  private void resetLines() {
+	    LOC = stLOC = ccLOC = trLOC = emLOC = 0;
+	  }
 
-	        // This is a Line of Code (total)
-	        LOC++;
+	  // Classify one trimmed line and increase the matching LOC counter, the line has been
+	  // scanned by lineState
+	  private void countLine(final CharSequence strLine) {
+	    // This is a Line of Code (total)
+	    LOC++;
 
-	        // This is an Empty Line (no visible characters)
-	        if (strLine.length() == 0) {
-	          emLOC++;
-	        }
-	        // Trivial Lines ( ´{´ or ´}´)
-	        else if (filetype.lineIsTrivial(strLine)) {
-	          trLOC++;
-	        }
-	        // Lines of Comments (single line of comment)
-	        else if (filetype.isLineComment(strLine)) {
-	          ccLOC++;
-	        }
-	        // Lines of Statements (ending with ';')
-	        else if (filetype.isLineStatement(strLine)) {
-	          stLOC++;
-	        }
-	        // Lines of Statements (methods, functions, conditions and statements)
-	        else {
-	          stLOC++;
+	    // This is an Empty Line (no visible characters)
+	    if (strLine.length() == 0) {
+	      emLOC++;
+	    }
+	    // Lines of Comments (only comments, or inside a block comment)
+	    else if (!lineState.hasCode()) {
+	      ccLOC++;
+	    }
+	    // Trivial Lines ( ´{´ or ´}´)
+	    else if (filetype.lineIsTrivial(strLine)) {
+	      trLOC++;
+	    }
+	    // Lines of Statements (ending with ';')
+	    else if (filetype.isLineStatement(strLine)) {
+	      stLOC++;
+	    }
+	    // Lines of Statements (methods, functions, conditions and statements)
+	    else {
+	      stLOC++;
+	    }
+	  }
+
+	  // Count Lines Of Code, find the methods and calculate their complexity while
+	  // reading the file once. Gives the same result as countLines(), parseMethods()
+	  // and countComplexity() together.
+	  // The lines are looked at where they are in the file content, a String is only
+	  // made for the name of a method.
+	  public void analyze() {
+	    SourceText text = null;
+	    try {
+	      text = SourceText.read(sourceFile);
+	    } catch (Exception e) {
+	      System.err.println("Error: " + e.getMessage());
+	    }
+	    analyze(text);
+	  }
+
+	  // As analyze(), with the content of the file read already, null if it could not be read
+	  public void analyze(final SourceText text) {
+	    resetLines();
+	    methodList.clear();
+	    MethodDetector detector = filetype.hasMethods() ? new MethodDetector(filetype, lineState, methodList) : null;
+	    try {
+	      SourceLine strLine = new SourceLine();
+	      SourceLine trimmed = new SourceLine();
+	      lineState.reset();
+	      lineState.setListener(detector);
+
+	      //Read File Line By Line
+	      while (text != null && text.nextLine(strLine)) {
+	        lineState.scan(strLine);
+	        trimmed.setTrimmed(strLine, 0, strLine.length());
+	        countLine(trimmed);
+	        if (detector != null) {
+	          detector.endOfLine(strLine);
 	        }
 	      }
-	      bReader.close();
-	      dStream.close();
-	    }catch (Exception e) {
+	    } catch (Exception e) {
 	      System.err.println("Error: " + e.getMessage());
 	    }
+	    // The methods found before an error are kept
+	    if (detector != null) {
+	      detector.endOfFile();
+	    }
+	    lineState.setListener(null);
+	    sumComplexity();
 	  }
-	  
-	  // Calculate the complexity for each method in the private ArrayList<Method>
-	  // (Need to populate the private ArrayList by using getMethods() first)
+
+	  // Add up the complexity of the methods, as MethodDetector calculated it when they were found
+	  private void sumComplexity() {
+	    CC = 0;
+	    for (Method method : methodList) {
+	      CC = CC + method.getComplexity();
+	    }
+	  }
+
+	  // Calculate the complexity of the methods in the private ArrayList<Method> again, on its own
+	  // (Need to populate the private ArrayList by using parseMethods() first).
+	  // The file is read once more and each token counts for the innermost method whose lines
+	  // it is on, so this doesn't depend on how MethodDetector gives the tokens to its methods
+	  // and -multipass can cross-check it. A line with parts of two methods, or a field of an
+	  // anonymous class in a method, may give a different result.
 	  public void countComplexity() {
-	    if (getNrOfMethods() > 0) {
-	      for (int i=0; i < getNrOfMethods(); i++) {
-	    	  Method method = getMethod(i);
-	        try{
-	          FileInputStream fStream = new FileInputStream(sourceFile.getAbsolutePath());
-	          DataInputStream dStream = new DataInputStream(fStream);
-	          BufferedReader bReader = new BufferedReader(new InputStreamReader(dStream));
-
-	          // Go to the first line of this method
-	          for(int j = 1; j < method.getLineNr(); ++j) {
-	            bReader.readLine();
-	          }
-
-	          int complexity = method.calculateMethodComplexity(bReader, method.getLineNr(), method.getLastLineNr());
-	          method.setComplexity(complexity);
-	          
-	          //Increase the total complexity
-	          CC = CC + complexity;
-	          
-	          bReader.close();
-	          dStream.close();
-	        }catch (Exception e) {
-	          System.err.println("Error: " + e.getMessage());
+	    int[] open = new int[methodList.size()];   // the methods around the line, innermost last
+	    int top = 0;
+	    int next = 0;
+	    int lineNr = 0;
+	    LineComplexity counter = new LineComplexity(filetype, methodList.size());
+	    try {
+	      SourceText text = SourceText.read(sourceFile);
+	      SourceLine strLine = new SourceLine();
+	      lineState.reset();
+	      lineState.setListener(counter);
+
+	      // Read File Line By Line
+	      while (text.nextLine(strLine)) {
+	        lineNr++;
+	        while (top > 0 && methodList.get(open[top - 1]).getLastLineNr() < lineNr) {
+	          top--;
 	        }
+	        while (next < methodList.size() && methodList.get(next).getLineNr() <= lineNr) {
+	          open[top++] = next++;
+	        }
+	        counter.startLine(top > 0 ? open[top - 1] : -1);
+	        lineState.scan(strLine);
+	      }
+	    } catch (Exception e) {
+	      System.err.println("Error: " + e.getMessage());
+	    }
+	    lineState.setListener(null);
+	    for (int i = 0; i < methodList.size(); i++) {
+	      methodList.get(i).setComplexity(1 + counter.complexity[i]);
+	    }
+	    sumComplexity();
+	  }
+
+	  // Counts the tokens that add to the complexity for the method of each line, see countComplexity()
+	  private static class LineComplexity implements LineState.TokenListener {
+	    private final FileType filetype;
+	    final int[] complexity;
+	    private int method = -1;
+	    private boolean lineStart = true;
+	    private boolean preprocessor = false;   // the line is for the preprocessor, as MethodDetector skips it
+	    private boolean typeArgument = false;   // the token before was < or ,
+
+	    LineComplexity(final FileType filetype, final int nrOfMethods) {
+	      this.filetype = filetype;
+	      complexity = new int[nrOfMethods];
+	    }
+
+	    // The tokens of the next line count for the method with this index, none if -1
+	    void startLine(final int method) {
+	      this.method = method;
+	      lineStart = true;
+	    }
+
+	    public void token(final int type, final CharSequence line, final int start, final int end) {
+	      if (lineStart) {
+	        lineStart = false;
+	        preprocessor = type == Lexer.OPERATOR && line.charAt(start) == '#';
+	      }
+	      if (preprocessor) {
+	        return;
 	      }
+	      if (method >= 0 && (type == Lexer.IDENTIFIER || type == Lexer.OPERATOR)
+	          && Method.addsComplexity(filetype.category(line, start, end), line, start, end, typeArgument)) {
+	        complexity[method]++;
+	      }
+	      typeArgument = type == Lexer.OPERATOR && end - start == 1
+	          && (line.charAt(start) == '<' || line.charAt(start) == ',');
 	    }
 	  }
 	  
@@ -174,76 +287,30 @@ public class ComplexityParser {
 	    dlLOC = value;
 	  }	  
 	  
-	  // Populate the private ArrayList methods
+	  // Populate the private ArrayList methods, see MethodDetector
 	  public void parseMethods() {
-	    int firstLine = 0;
+	    methodList.clear();
+	    if (!filetype.hasMethods()) {
+	      return;
+	    }
+	    MethodDetector detector = new MethodDetector(filetype, lineState, methodList);
 	    try {
-	      FileInputStream fStream = new FileInputStream(sourceFile.getAbsolutePath());
-	      DataInputStream dStream = new DataInputStream(fStream);
-	      BufferedReader bReader = new BufferedReader(new InputStreamReader(dStream));
-	      String strLine;
-	      
+	      SourceText text = SourceText.read(sourceFile);
+	      SourceLine strLine = new SourceLine();
+	      lineState.reset();
+	      lineState.setListener(detector);
+
 	      // Read File Line By Line
-	      while ((strLine = bReader.readLine()) != null) {
-	        firstLine++;
-	        strLine = trimComments(strLine); // Trim tailing comments
-	        strLine = strLine.trim(); // Trim leading and trailing whitespace
-
-	        if (strLine.length() != 0 && !filetype.isLineStatement(strLine) && Character.isLetter(strLine.charAt(0))) {
-	          if (filetype.isMethod(strLine)) {
-	            int lastLine = firstLine + getLastMethodLine(strLine, bReader);
-	            
-	            // Add it to the private ArrayList method
-	            Method method = new Method(firstLine, lastLine, strLine, filetype);
-	            methodList.add(method);
-	            firstLine = lastLine;
-	          }
-	        }
+	      while (text.nextLine(strLine)) {
+	        lineState.scan(strLine);
+	        detector.endOfLine(strLine);
 	      }
-	      bReader.close();
-	      dStream.close();
 	    } catch (Exception e) {
 	      System.err.println("Error: " + e.getMessage());
 	    }
-	  }
-
-	  // Count the number of lines in this method
-	  private int getLastMethodLine(String firstLine, final BufferedReader bReader) {
-	    String strLine = firstLine;
-	    boolean endOfMethod = false;
-	    int functionDepth = 0;
-	    int linesOfCode = 0;
-
-	    while (!endOfMethod) {
-	        functionDepth = functionDepth + getIndentationDepth(strLine);
-
-	        if (functionDepth == 0 && linesOfCode > 1) {
-	          // We have reached the end of the method
-	          endOfMethod = true;
-	          return linesOfCode;
-	        }
-	        try {
-		    strLine = bReader.readLine();
-		    linesOfCode++;
-		} catch (IOException e) {
-		    e.printStackTrace();
-		}
-	    }
-	    return linesOfCode;
-	  }
-
-	  // Increase or decrease the indentation level
-	  private int getIndentationDepth(final String strLine) {
-	    int depth = 0;
-	    for (int i = 0; i < strLine.length(); i++) {
-	      char c = strLine.charAt(i);
-	      if (c == '{') {
-	        depth++;
-	      } else if (c == '}') {
-	        depth--;
-	      }
-	    }
-	    return depth;
+	    // The methods found before an error are kept
+	    detector.endOfFile();
+	    lineState.setListener(null);
 	  }
 	  
 	  // Return the total number of methods
@@ -265,45 +332,29 @@ public class ComplexityParser {
 	public File getSourceFile() {
 		return sourceFile;
 	}
-	
-	  // Check if the position is within quotation marks
-	  private boolean inQuotation(final String strLine, final int pos) {
-	    int quotes = 0;
-	    // Count the number of quotation marks to the left of this position
-	    for (int i = pos; 0 <= i; i--) {
-	      if (strLine.charAt(i) == '"') {
-	        quotes++;
-	      }
-	    }
-
-	    // If the number is uneven, we within quotation
-	    if (quotes % 2 == 1) {
-	      return true;
-	    }
-	    return false;
-	  }
-	  
-	  // Remove tailing comment if there is any
-	  private String trimComments(final String strLine) {
 
-	    int index = strLine.indexOf("//");
+	public String getModule() {
+		return module;
+	}
 
-	    // No comments in this line, return the line
-	    if (index == -1) { // We have to ignore "//" (not a comment)
-	      return strLine;
-	    }
+	public void setModule(final String module) {
+		this.module = module;
+	}
 
-	    while (inQuotation(strLine, index) && index != -1) {
-	      // System.out.println(index + strLine);
-	      index = strLine.indexOf("//", index + 2);
-	    }
+	public FileType getFileType() {
+		return filetype;
+	}
 
-	    if (index == -1) {
-	      // No comments
-	      return strLine;
-	    }
-	    // End of line comment
-	    return strLine.substring(0, index);
-	  }
+	// Take the results of an earlier analysis of the same content, instead of analyze()
+	void restore(final int LOC, final int stLOC, final int ccLOC, final int trLOC, final int emLOC,
+			final List<Method> methods) {
+		this.LOC = LOC;
+		this.stLOC = stLOC;
+		this.ccLOC = ccLOC;
+		this.trLOC = trLOC;
+		this.emLOC = emLOC;
+		methodList = new ArrayList<Method>(methods);
+		sumComplexity();
+	}
 
 }
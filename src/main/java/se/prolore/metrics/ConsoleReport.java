@@ -0,0 +1,79 @@
+package se.prolore.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+// The report on the console: the metrics of each file, then the totals
+public class ConsoleReport implements ReportSink {
+  private final PrintStream out;
+  private final boolean codeChurn;
+
+  // With the code churn metrics if codeChurn is set
+  ConsoleReport(final PrintStream out, final boolean codeChurn) {
+    this.out = out;
+    this.codeChurn = codeChurn;
+  }
+
+  public void file(final ComplexityParser file) {
+    out.println(file.getSourceFile().getAbsolutePath());
+    out.println("\t Total Lines of Code:       " + file.getLinesOfCode()); 
+    out.println("\t Executable Lines:          " + file.getLinesOfStatements());
+    out.println("\t Lines of Comments:         " + file.getLinesOfComments()); 
+    out.println("\t Trivial Lines:             " + file.getTrivialLines()); 
+    out.println("\t Empty Lines:               " + file.getEmptyLines()); 
+    out.println("\t Code Complexity:           " + file.getComplexity());
+    out.println("\t Number of Methods:         " + file.getNrOfMethods());
+    out.println("\t Average Method Complexity: " + file.getAvgComplexity());
+    out.println("\t Comment Percentage:        " + ReportTotals.commentPercentage(file.getLinesOfComments(), file.getLinesOfCode()) + "%");
+    // Recommendations: Code where the percentage of comment is lower than 20% should be more commented. 
+    // However overly commented code (>40%) is more difficult to read.
+    if (codeChurn) {
+      out.println("\t Added Lines of Code:       " + file.getAddedLines());
+      out.println("\t Changed Lines of Code:     " + file.getChangedLines());
+      out.println("\t Deleted Lines of Code:     " + file.getDeletedLines());
+      out.println("\t Code Churn:                " + file.getCodeChurn());
+    }
+  }
+
+  public void deletedFile(final ComplexityParser deletedFile) {
+    out.println(deletedFile.getSourceFile().getAbsolutePath() + " (deleted)");
+    out.println("\t Deleted Lines of Code:     " + deletedFile.getDeletedLines());
+    out.println("\t Code Churn:                " + deletedFile.getCodeChurn());
+  }
+
+  public void close(final ReportTotals totals) {
+    out.println("Total (Aggregated Metrics)");
+    out.println("\t Total Lines of Code:     " + totals.sumLinesOfCode()); 
+    out.println("\t Executable Lines:        " + totals.sumLinesOfStatements());
+    out.println("\t Lines of Comments:       " + totals.sumLinesOfComments()); 
+    out.println("\t Trivial Lines:           " + totals.sumTrivialLines()); 
+    out.println("\t Empty Lines:             " + totals.sumEmptyLines()); 
+    out.println("\t Code Complexity:         " + totals.sumComplexity());
+    out.println("\t Number of Files:         " + totals.getNrOfFiles());
+    out.println("\t Average File Complexity: " + totals.sumAvgComplexity());
+    out.println("\t Comment Percentage:      " + ReportTotals.commentPercentage(totals.sumLinesOfComments(), totals.sumLinesOfCode()) + "%");
+    // Recommendations: Code where the percentage of comment is lower than 20% should be more commented. 
+    // However overly commented code (>40%) is more difficult to read.  
+    if (codeChurn) {
+      out.println("\t Added Lines of Code:     " + totals.sumAddedLines());
+      out.println("\t Changed Lines of Code:   " + totals.sumChangedLines());
+      out.println("\t Deleted Lines of Code:   " + totals.sumDeletedLines());
+      out.println("\t Code Churn:              " + totals.sumCodeChurn());
+    }
+    for (Map.Entry<String, ReportTotals> module : totals.getModules().entrySet()) {
+      ReportTotals moduleTotals = module.getValue();
+      out.println("Module " + module.getKey());
+      out.println("\t Total Lines of Code:     " + moduleTotals.sumLinesOfCode());
+      out.println("\t Code Complexity:         " + moduleTotals.sumComplexity());
+      out.println("\t Number of Files:         " + moduleTotals.getNrOfFiles());
+      out.println("\t Number of Methods:       " + moduleTotals.getNrOfMethods());
+      if (codeChurn) {
+        out.println("\t Added Lines of Code:     " + moduleTotals.sumAddedLines());
+        out.println("\t Changed Lines of Code:   " + moduleTotals.sumChangedLines());
+        out.println("\t Deleted Lines of Code:   " + moduleTotals.sumDeletedLines());
+        out.println("\t Code Churn:              " + moduleTotals.sumCodeChurn());
+      }
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,22 @@
+package se.prolore.metrics;
+
+// C and C++ have the comments, literals and blocks of Java, so only the keywords differ.
+// Lines of the preprocessor start with '#', MethodDetector skips them.
+public class CppFileType extends JavaFileType {
+
+	private static final KeywordTable CPP_KEYWORDS = new KeywordTable()
+		.add(SELECTION, "if", "else", "case", "default")
+		.add(LOOP, "for", "while", "do", "break", "continue", "goto")
+		.add(OPERATOR, "&&", "||", "?", ":", "and", "or")
+		.add(EXCEPTION, "catch", "try", "throw")
+		.add(DECLARATION, "class", "struct", "union", "namespace");
+
+	public CppFileType() {
+		super(CPP_KEYWORDS);
+	}
+
+	@Override
+	public String getName() {
+		return "cpp";
+	}
+}
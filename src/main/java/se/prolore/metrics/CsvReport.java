@@ -0,0 +1,154 @@
+package se.prolore.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+
+// The report as a .csv file, one row per file, written as the files are done.
+// With modules, a row per module follows the files. A text field with a ';', a '"' or a
+// line break in it is quoted, see field().
+public class CsvReport implements ReportSink {
+  private static final String NEWLINE = System.getProperty("line.separator");
+
+  private BufferedWriter out = null;
+  private final boolean codeChurn;
+
+  // With the code churn columns if codeChurn is set
+  CsvReport(final File file, final boolean codeChurn) {
+    this.codeChurn = codeChurn;
+    try {
+      out = new BufferedWriter(new FileWriter(file));
+      out.write("File Name;");
+      out.write("Total Lines of Code;"); 
+      out.write("Executable Lines;");
+      out.write("Lines of Comments;"); 
+      out.write("Trivial Lines;"); 
+      out.write("Empty Lines;"); 
+      out.write("Code Complexity;");
+      out.write("Number of Methods;");
+      out.write("Average Method Complexity;");
+      out.write("Comment Percentage;");
+      if (codeChurn) {
+        out.write("Added Lines of Code;");
+        out.write("Changed Lines of Code;");
+        out.write("Deleted Lines of Code;");
+        out.write("Code Churn;");
+      }
+      out.write(NEWLINE);
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // A text field of a row: as it is, or between '"' with each '"' in it doubled if it has a
+  // ';', a '"' or a line break, so it can't move the columns
+  static String field(final String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == ';' || c == '"' || c == '\n' || c == '\r') {
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+      }
+    }
+    return text;
+  }
+
+  public void file(final ComplexityParser file) {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.write(field(file.getSourceFile().getAbsolutePath()) + ";"); 
+      out.write(String.valueOf(file.getLinesOfCode()) + ";"); 
+      out.write(String.valueOf(file.getLinesOfStatements()) + ";");
+      out.write(String.valueOf(file.getLinesOfComments()) + ";"); 
+      out.write(String.valueOf(file.getTrivialLines()) + ";");
+      out.write(String.valueOf(file.getEmptyLines()) + ";");
+      out.write(String.valueOf(file.getComplexity()) + ";");
+      out.write(String.valueOf(file.getNrOfMethods()) + ";");
+      out.write(String.valueOf(file.getAvgComplexity()) + ";");
+      out.write(ReportTotals.commentPercentage(file.getLinesOfComments(), file.getLinesOfCode()) + "%;");
+      if (codeChurn) {
+        out.write(String.valueOf(file.getAddedLines()) + ";");
+        out.write(String.valueOf(file.getChangedLines()) + ";");
+        out.write(String.valueOf(file.getDeletedLines()) + ";");
+        out.write(String.valueOf(file.getCodeChurn()) + ";");
+      }
+      out.write(NEWLINE);
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // Deleted files only have code churn
+  public void deletedFile(final ComplexityParser deletedFile) {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.write(field(deletedFile.getSourceFile().getAbsolutePath()) + ";");
+      out.write(";;;;;;;;;");
+      out.write("0;0;");
+      out.write(String.valueOf(deletedFile.getDeletedLines()) + ";");
+      out.write(String.valueOf(deletedFile.getCodeChurn()) + ";");
+      out.write(NEWLINE);
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  public void close(final ReportTotals totals) {
+    if (out == null) {
+      return;
+    }
+    try {
+      if (!totals.getModules().isEmpty()) {
+        out.write(NEWLINE);
+        out.write("Module;");
+        out.write("Total Lines of Code;");
+        out.write("Code Complexity;");
+        out.write("Number of Files;");
+        out.write("Number of Methods;");
+        if (codeChurn) {
+          out.write("Added Lines of Code;");
+          out.write("Changed Lines of Code;");
+          out.write("Deleted Lines of Code;");
+          out.write("Code Churn;");
+        }
+        out.write(NEWLINE);
+      }
+      for (Map.Entry<String, ReportTotals> module : totals.getModules().entrySet()) {
+        ReportTotals moduleTotals = module.getValue();
+        out.write(field(module.getKey()) + ";");
+        out.write(String.valueOf(moduleTotals.sumLinesOfCode()) + ";");
+        out.write(String.valueOf(moduleTotals.sumComplexity()) + ";");
+        out.write(String.valueOf(moduleTotals.getNrOfFiles()) + ";");
+        out.write(String.valueOf(moduleTotals.getNrOfMethods()) + ";");
+        if (codeChurn) {
+          out.write(String.valueOf(moduleTotals.sumAddedLines()) + ";");
+          out.write(String.valueOf(moduleTotals.sumChangedLines()) + ";");
+          out.write(String.valueOf(moduleTotals.sumDeletedLines()) + ";");
+          out.write(String.valueOf(moduleTotals.sumCodeChurn()) + ";");
+        }
+        out.write(NEWLINE);
+      }
+      out.close();
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // Report the error once and write no more
+  private void failed(final IOException e) {
+    System.err.println("Error: " + e.getMessage());
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException closeFailed) {
+        // already reported
+      }
+    }
+    out = null;
+  }
+}
@@ -1,41 +1,49 @@
 package se.prolore.metrics;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Arrays;
 
 //////////////////////////////////////////////////////////////////////////////
 // Class: fileInfo
 //////////////////////////////////////////////////////////////////////////////
 
 class fileInfo {    
-  static final int MAXLINECOUNT = 20000;
-  BufferedReader file;    // Reads from a character input stream.
+  static final int MINLINECOUNT = 64;      // Lines to start with, the arrays grow when needed
+  static final int BYTESPERLINE = 32;      // To guess the Nr lines from the file size
+  SourceText file;        // The content of the file, split into lines.
   public int maxLine;     // After input done, Nr lines in file.
-  Node symbol[];          // The symtab handle of each line.
+  int symbol[];           // The symtab id of each line ( grows while the file is read ).
   int other[];            // Map of lineNr to lineNr in other file ( -1 means don't-know ).
                           // Allocated AFTER the lines are read.
+  // The arrays are kept from one file to the next and only grow, so a Diff that compares
+  // many files doesn't allocate them again for each one.
+
+  // Read the file with the given name; file is opened and saved.
+  void read( String filename ) throws IOException {
+    long guess = new File(filename).length() / BYTESPERLINE;
+    int lines = (int) Math.min( Math.max( guess, MINLINECOUNT ), Integer.MAX_VALUE / 4 ) + 2;
+    if ( symbol == null || symbol.length < lines ) {
+      symbol = new int [ lines ];
+    }
+    file = SourceText.read(new File(filename));
+  }
 
-  // Normal constructor with one filename; file is opened and saved.
-  fileInfo( String filename ) {
-    symbol = new Node [ MAXLINECOUNT+2 ];
-    other  = null;    // allocated later!
-    try {
-      FileInputStream fStream = new FileInputStream(filename);
-      DataInputStream dStream = new DataInputStream(fStream);
-      file = new BufferedReader(new InputStreamReader(dStream));
-    } catch (IOException e) {
-      System.err.println("Diff can't read file " + filename );
-      System.err.println("Error Exception was:" + e );
-      System.exit(1);
+  // Store the symtab id of a line, growing the array if the file is longer than guessed.
+  void setSymbol( int linenum, int id ) {
+    if ( linenum >= symbol.length - 1 ) {
+      int grown[] = new int[ symbol.length * 2 ];
+      System.arraycopy( symbol, 0, grown, 0, symbol.length );
+      symbol = grown;
     }
+    symbol[ linenum ] = id;
   }
 
-  // This is done late, to be same size as # lines in input file.
+  // This is done late, to be at least the same size as # lines in input file.
   void alloc() {
-    other  = new int[symbol.length + 2];
+    if ( other == null || other.length < maxLine + 2 ) {
+      other  = new int[ maxLine + 2 ];
+    }
   }
 };
 
@@ -44,6 +52,8 @@ class fileInfo {
 // Class: Diff
 //
 // The info is kept here per-file.
+// A Diff can compare one file pair after the other. Its arrays, symbol table and
+// algorithm are used again for each pair, see forThread().
 //////////////////////////////////////////////////////////////////////////////
 
 public class Diff {
@@ -56,74 +66,141 @@ public class Diff {
   final int UNREAL=Integer.MAX_VALUE;
 
   // Keeps track of information about old file and new file
-  fileInfo oldFileInfo, newFileInfo;
+  fileInfo oldFileInfo = new fileInfo(), newFileInfo = new fileInfo();
 
   //blocklen is the info about found blocks. 
   //It will be set to 0, except at the line#s where blocks start in the old file. 
   //At these places it will be set to the # of lines in the block. 
   //During printout, this # will be reset to -1 if the block is printed as a MOVE block
   //(because the printout phase will encounter the block twice, but must only print it once.)
-  //The array declarations are to MAXLINECOUNT+2 so that we can have two extra lines 
-  //(pseudolines) at line# 0 and line# MAXLINECOUNT+1 (or less).
-  int blocklen[];
+  //The arrays are sized to at least the longest file + 2 so that we can have two extra lines 
+  //(pseudolines) at line# 0 and line# maxLine+1.
+  int blocklen[] = null;
+
+  // Symbol table of this comparison, cleared for the next one
+  SymbolTable symbols = new SymbolTable();
+
+  // Gets the changed lines, null to only count them
+  private DiffSink sink;
+
+  // Finds the matching lines of the two files
+  private DiffAlgorithm algorithm;
+  private String algorithmName = null;   // set by forThread()
+
+  // Lines in both files of the last comparison
+  private int linesCompared = 0;
   
-  // Constructor
+  // Constructor, only count the churn
   Diff() {
+    this(null, new HeckelDiff());
+  }
+
+  // Constructor, give the changed lines to sink (if not null) and match the lines with the given algorithm
+  Diff(DiffSink sink, DiffAlgorithm algorithm) {
+    this.sink = sink;
+    this.algorithm = algorithm;
+  }
+
+  // The Diff of each thread, see forThread()
+  private static final ThreadLocal<Diff> WORKSPACE = new ThreadLocal<Diff>();
+
+  // The Diff of the current thread for the named algorithm, made the first time. When many file
+  // pairs are compared on a few worker threads, each thread compares all of its pairs with this
+  // one Diff, so the arrays and the hash table are only grown when a file is longer than any
+  // before it, not allocated again for every pair. The changed lines go to sink, if not null.
+  static Diff forThread(final String algorithmName, final DiffSink sink) {
+    Diff diff = WORKSPACE.get();
+    if (diff == null || !diff.algorithmName.equals(algorithmName)) {
+      diff = new Diff(null, getAlgorithm(algorithmName));
+      diff.algorithmName = algorithmName;
+      WORKSPACE.set(diff);
+    }
+    diff.sink = sink;
+    return diff;
+  }
+
+  public int getLinesCompared() {
+    return linesCompared;
+  }
+
+  // The diff algorithm with the given name: heckel, myers or histogram. Null if there is none.
+  public static DiffAlgorithm getAlgorithm(String name) {
+    if (name.equals("heckel")) {
+      return new HeckelDiff();
+    }
+    if (name.equals("myers")) {
+      return new MyersDiff();
+    }
+    if (name.equals("histogram")) {
+      return new HistogramDiff();
+    }
+    return null;
   }
   
-  public void countChurn(ComplexityParser oldFile, ComplexityParser newFile) {
-      doDiff(oldFile.getSourceFile().getAbsolutePath(), newFile.getSourceFile().getAbsolutePath());
+  // Throws IOException if a file can't be read, the churn of newFile is not changed then
+  public void countChurn(ComplexityParser oldFile, ComplexityParser newFile) throws IOException {
+      String oldName = oldFile.getSourceFile().getAbsolutePath();
+      String newName = newFile.getSourceFile().getAbsolutePath();
+      if (sink != null) {
+        sink.startFile(oldName, newName);
+      }
+      doDiff(oldName, newName);
       calculateChurn();
+      if (sink != null) {
+        sink.endFile();
+      }
       
       newFile.setAddedLines(adLOC); // Added Lines of Code
       newFile.setChangedLines(chLOC); // Changed Lines of Code
       newFile.setDeletedLines(dlLOC); // Deleted Lines of Code
+
+      // Release the lines of this file pair, the arrays are kept for the next one
+      linesCompared = oldFileInfo.maxLine + newFileInfo.maxLine;
+      symbols.clear();
   }
 
   // Do one file comparison. Called with both filenames.
-  public void doDiff(String oldFile, String newFile) {
-    System.out.println( ">>>> Difference of file \"" + oldFile + "\" and file \"" + newFile + "\".\n");
-    oldFileInfo = new fileInfo(oldFile);
-    newFileInfo = new fileInfo(newFile);
+  public void doDiff(String oldFile, String newFile) throws IOException {
+    adLOC = chLOC = dlLOC = 0;
+    oldFileInfo.read(oldFile);
+    newFileInfo.read(newFile);
+    symbols.clear();
     // we don't process until we know both files really do exist.
-    try {
-      inputScan( oldFileInfo );
-      inputScan( newFileInfo );
-    } catch (IOException e) {
-      System.err.println("Read error: " + e);
+    SourceLine line = new SourceLine();
+    inputScan( oldFileInfo, line );
+    inputScan( newFileInfo, line );
+
+    // Now that we've read all the lines, allocate some arrays if they are too short.
+    int maxLine = oldFileInfo.maxLine>newFileInfo.maxLine ? oldFileInfo.maxLine : newFileInfo.maxLine;
+    if ( blocklen == null || blocklen.length < maxLine + 2 ) {
+      blocklen = new int[ maxLine + 2 ];
     }
-
-    // Now that we've read all the lines, allocate some arrays.
-    blocklen = new int[ (oldFileInfo.maxLine>newFileInfo.maxLine ? oldFileInfo.maxLine : newFileInfo.maxLine) + 2 ];
     oldFileInfo.alloc();
     newFileInfo.alloc();
 
-    // Now do the work, and print the results.
+    // Now do the work.
     transform();
   }
 
   //Reads the file specified by pinfo.file.
   //Places the lines of that file in the symbol table.
   //Sets pinfo.maxLine to the number of lines found.
-  void inputScan( fileInfo pinfo ) throws IOException {
-    String linebuffer;
+  //The lines are read into linebuffer, a view of the file content.
+  void inputScan( fileInfo pinfo, SourceLine linebuffer ) {
     pinfo.maxLine = 0;
-    while ((linebuffer = pinfo.file.readLine()) != null) {
+    while (pinfo.file.nextLine( linebuffer )) {
       storeLine( linebuffer, pinfo );
     }
+    pinfo.file = null;
   }
 
   //Places line into symbol table.
   //Expects pinfo.maxLine initted: increments.
-  //Places symbol table handle in pinfo.ymbol.
+  //Places symbol table id in pinfo.symbol.
   //Expects pinfo is either oldinfo or newinfo.
-  void storeLine( String linebuffer, fileInfo pinfo ) {
+  void storeLine( SourceLine linebuffer, fileInfo pinfo ) {
     int linenum = ++pinfo.maxLine;    // note, no line zero
-    if ( linenum > fileInfo.MAXLINECOUNT ) {
-      System.err.println( "MAXLINECOUNT exceeded, must stop." );
-      System.exit(1);
-    }
-    pinfo.symbol[ linenum ] = Node.addSymbol( linebuffer, pinfo == oldFileInfo, linenum );
+    pinfo.setSymbol( linenum, symbols.addSymbol( linebuffer ) );
   }
 
   //Analyzes the file differences and leaves its findings in
@@ -142,103 +219,17 @@ public class Diff {
       newFileInfo.other[newline]= -1;
     }
 
-    scanUnique();  // scan for lines used once in both files
-    scanAfter();   // scan past sure-matches for non-unique blocks 
-    scanBefore();  // scan backwards from sure-matches
-    scanBlocks();  // find the fronts and lengths of blocks
-  }
-
-  //Scans for lines which are used exactly once in each file.
-  //Expects both files in symtab, and oldinfo and newinfo valid.
-  //The appropriate "other" array entries are set to the line# in the other file.
-  //Claims pseudo-lines at 0 and XXXinfo.maxLine+1 are unique.
-  void scanUnique() {
-    int oldline, newline;
-    Node psymbol;
-
-    for( newline = 1; newline <= newFileInfo.maxLine; newline++ ) {
-      psymbol = newFileInfo.symbol[ newline ];
-      if ( psymbol.symbolIsUnique()) {        // 1 use in each file
-        oldline = psymbol.linenum;
-        newFileInfo.other[ newline ] = oldline;   // record 1-1 map
-        oldFileInfo.other[ oldline ] = newline;
-      }
-    }
+    // The pseudolines match each other
     newFileInfo.other[ 0 ] = 0;
     oldFileInfo.other[ 0 ] = 0;
     newFileInfo.other[ newFileInfo.maxLine + 1 ] = oldFileInfo.maxLine + 1;
     oldFileInfo.other[ oldFileInfo.maxLine + 1 ] = newFileInfo.maxLine + 1;
-  }
 
-  //Expects both files in symtab, and oldinfo and newinfo valid.
-  //Expects the "other" arrays contain positive #s to indicate lines that are unique in both files.
-  //For each such pair of places, scans past in each file.
-  //Contiguous groups of lines that match non-uniquely are taken to be good-enough matches, and so marked in "other".
-  //Assumes each other[0] is 0.
-  void scanAfter() {
-    int oldline, newline;
+    // find the matching lines
+    algorithm.match( oldFileInfo.symbol, oldFileInfo.maxLine, newFileInfo.symbol, newFileInfo.maxLine,
+        symbols.size, oldFileInfo.other, newFileInfo.other );
 
-    for( newline = 0; newline <= newFileInfo.maxLine; newline++ ) {
-      oldline = newFileInfo.other[ newline ];
-      if ( oldline >= 0 ) {   // is unique in old & new
-        for(;;) {             // scan after there in both files
-          if ( ++oldline > oldFileInfo.maxLine   ) {
-            break; 
-          }
-          if ( oldFileInfo.other[ oldline ] >= 0 ) { 
-            break;
-          }
-          if ( ++newline > newFileInfo.maxLine   ) { 
-            break; 
-          }
-          if ( newFileInfo.other[ newline ] >= 0 ) { 
-            break;
-          }
-          // oldline & newline exist, and aren't already matched
-
-          if ( newFileInfo.symbol[ newline ] != oldFileInfo.symbol[ oldline ] ) { 
-            break;  // not same
-          }
-
-          newFileInfo.other[newline] = oldline; // record a match
-          oldFileInfo.other[oldline] = newline;
-        }
-      }
-    }
-  }
-
-  //As scanafter, except scans towards file fronts.
-  //Assumes the off-end lines have been marked as a match.
-  void scanBefore() {
-    int oldline, newline;
-
-    for( newline = newFileInfo.maxLine + 1; newline > 0; newline-- ) {
-      oldline = newFileInfo.other[ newline ];
-      if ( oldline >= 0 ) {   // unique in each
-        for(;;) {
-          if ( --oldline <= 0 ) {
-            break;
-          }
-          if ( oldFileInfo.other[ oldline ] >= 0 ) { 
-            break;
-          }
-          if ( --newline <= 0 ) { 
-            break;
-          }
-          if ( newFileInfo.other[ newline ] >= 0 ) { 
-            break;
-          }
-          // oldline and newline exist, and aren't marked yet
-
-          if ( newFileInfo.symbol[ newline ] != oldFileInfo.symbol[ oldline ] ) {
-            break;  // not same
-          }
-
-          newFileInfo.other[newline] = oldline; // record a match
-          oldFileInfo.other[oldline] = newline;
-        }
-      }
-    }
+    scanBlocks();  // find the fronts and lengths of blocks
   }
 
   //Finds the beginnings and lengths of blocks of matches.
@@ -249,7 +240,7 @@ public class Diff {
     int oldfront = 0;      // line# of front of a block in old, or 0 
     int newlast = -1;      // newline's value during prev. iteration
 
-    for( oldline = 1; oldline <= oldFileInfo.maxLine; oldline++ ) {
+    for( oldline = 0; oldline <= oldFileInfo.maxLine; oldline++ ) {
       blocklen[ oldline ] = 0;
     }
     blocklen[ oldFileInfo.maxLine + 1 ] = UNREAL; // starts a mythical blk
@@ -280,15 +271,27 @@ public class Diff {
   public static final int idle = 0, deleted = 1, added = 2, movenew = 3, moveold = 4, same = 5, changed = 6;
   int diffStatus;
   int churnStatus;
-  boolean anyprinted;
   int currentLineOldFile, currentLineNewFile;     // line numbers in old & new file
 
+  // Give the current line of the old file to the sink
+  void showOld( int status ) {
+    if ( sink != null ) {
+      sink.oldLine( status, currentLineOldFile, currentLineNewFile, symbols.getLine( oldFileInfo.symbol[ currentLineOldFile ] ) );
+    }
+  }
+
+  // Give the current line of the new file to the sink
+  void showNew( int status ) {
+    if ( sink != null ) {
+      sink.newLine( status, currentLineOldFile, currentLineNewFile, symbols.getLine( newFileInfo.symbol[ currentLineNewFile ] ) );
+    }
+  }
+
 
   // Calculate Code Churn
   // Expects all data structures have been filled out.
   void calculateChurn() {
     diffStatus = idle;
-    anyprinted = false;
     for( currentLineOldFile = currentLineNewFile = 1; ; ) {
       if ( currentLineOldFile > oldFileInfo.maxLine ) { 
         consumeNew(); 
@@ -313,45 +316,33 @@ public class Diff {
       else
         countMove();
     }
-    if ( anyprinted == true ) 
-      System.out.println( ">>>> End of differences."  );
-    else
-      System.out.println( ">>>> Files are identical." );
   }
   
   // Expects currentLineOldFile is at a deletion.
   void countDelete() {
-    if ( diffStatus != deleted ) {
-      //System.out.println( ">>>> DELETE AT " + currentLineOldFile);
-      System.out.println("DELETED");
-    }
     diffStatus = deleted;
-    oldFileInfo.symbol[ currentLineOldFile ].showSymbol();
+    showOld( deleted );
     dlLOC++;
-    anyprinted = true;
     currentLineOldFile++;
   }
 
   // Expects currentLineNewFile is at an add.
   void countInsert() {
     if ( diffStatus == changed ) {
-      System.out.println( "CHANGED" );
       churnStatus = changed;
     }
     else if ( diffStatus != added ) { 
-      System.out.println( "ADDED");
       churnStatus = added;
     }
 
     diffStatus = added;
-    newFileInfo.symbol[ currentLineNewFile ].showSymbol();
+    showNew( churnStatus );
 
     if (churnStatus == changed )
       chLOC++;
     else if (churnStatus == added)
       adLOC++;
 
-    anyprinted = true;
     currentLineNewFile++;
   }
 
@@ -359,7 +350,7 @@ public class Diff {
   // Expects currentLineOldFile is at a deletion.
   void countChange() {
     diffStatus = changed;
-    anyprinted = true;
+    showOld( changed );
     currentLineOldFile++;
   }
 
@@ -368,8 +359,7 @@ public class Diff {
     int count;
     diffStatus = idle;
     if ( newFileInfo.other[ currentLineNewFile ] != currentLineOldFile ) {
-      System.err.println("BUG IN LINE REFERENCING");
-      System.exit(1);
+      throw new IllegalStateException("BUG IN LINE REFERENCING");
     }
     count = blocklen[ currentLineOldFile ];
     currentLineOldFile += count;
@@ -385,13 +375,11 @@ public class Diff {
     if ( newblock < 0 ) skipNewBlock(); // already printed.
     else if ( oldblock >= newblock ) {  // assume new's blk moved.
       blocklen[newother] = -1;          // stamp block as "printed".
-      System.out.println( ">>>> " + newother + " THRU " + (newother + newblock - 1) + " MOVED TO BEFORE " + currentLineOldFile );
       for( ; newblock > 0; newblock--, currentLineNewFile++ )
       {
-        newFileInfo.symbol[ currentLineNewFile ].showSymbol();
+        showNew( movenew );
         chLOC++;
       }
-      anyprinted = true;
       diffStatus = idle;
 
     } else        // assume old's block moved
@@ -403,6 +391,7 @@ public class Diff {
   void skipOldBlock() {
     diffStatus = idle;
     for(;;) {
+      showOld( moveold );
       if ( ++currentLineOldFile > oldFileInfo.maxLine )
         break;    // end of file
       if ( oldFileInfo.other[ currentLineOldFile ] < 0 )
@@ -429,7 +418,7 @@ public class Diff {
   }
   
   // Have run out of old file. 
-  // Print the rest of the new file, as inserts and/or moves.
+  // Count the rest of the new file, as inserts and/or moves.
   void consumeNew() {
     for(;;) {
       if ( currentLineNewFile > newFileInfo.maxLine )
@@ -442,14 +431,16 @@ public class Diff {
   }
 
   // Have run out of new file.
-  // Process the rest of the old file, printing any parts which were deletes or moves.
+  // Process the rest of the old file, counting any parts which were deletes or moves.
   void consumeOld() {
     for(;;) {
       if ( currentLineOldFile > oldFileInfo.maxLine )
         break;       // end of file
       currentLineNewFile = oldFileInfo.other[ currentLineOldFile ];
-      if ( currentLineNewFile < 0 ) 
+      if ( currentLineNewFile < 0 ) {
+        currentLineNewFile = newFileInfo.maxLine + 1;   // deleted at the end of the new file
         countDelete();
+      }
       else if ( blocklen[ currentLineOldFile ] < 0 ) 
         skipOldBlock();
       else 
@@ -461,97 +452,108 @@ public class Diff {
 
 
 //////////////////////////////////////////////////////////////////////////////
-// Class: Node
-// The symbol table routines in this class all understand the symbol table format,
-// which is a binary tree.
-// The methods are: addSymbol, symbolIsUnique, showSymbol.
+// Class: SymbolTable
+// The symbol table of one Diff. Each distinct line gets an id, its index in
+// lines. The lines are found by an open addressing hash
+// table of ids keyed by the hash of the line. Lines with the same hash are told
+// apart with equals, so hash collisions never match two different lines.
+// The table is cleared for each comparison without clearing its slots: a slot
+// is only used if its mark is the current generation.
+// The methods are: addSymbol, getLine, clear.
 //////////////////////////////////////////////////////////////////////////////
 
-class Node {            // the tree is made up of these nodes
-  Node pleft, pright;
-  int linenum;
-
-  static final int freshnode = 0,
-      oldonce = 1, newonce = 2, bothonce = 3, other = 4;
-
-  int /* enum linestates */ linestate;
-  String line;
+class SymbolTable {
+  static final int INITIAL_CAPACITY = 256;   // must be a power of two
+
+  int slots[];        // id + 1 of the line in each used slot
+  int hashes[];       // the hash of the line in each used slot
+  int marks[];        // the generation a slot was used in, any other means a free slot
+  int generation;
+  String lines[];     // the lines, by id
+  int size;           // Nr of lines
+
+  SymbolTable() {
+    slots = new int[ INITIAL_CAPACITY ];
+    hashes = new int[ INITIAL_CAPACITY ];
+    marks = new int[ INITIAL_CAPACITY ];
+    generation = 1;
+    lines = new String[ INITIAL_CAPACITY / 2 ];
+    size = 0;
+  }
 
-  static Node panchor = null;     // symtab is a tree hung from this
+  // Remove all lines, the arrays are kept.
+  void clear() {
+    if ( size == 0 ) {
+      return;
+    }
+    Arrays.fill( lines, 0, size, null );
+    size = 0;
+    if ( ++generation == 0 ) {    // wrapped around, the old marks could match again
+      Arrays.fill( marks, 0 );
+      generation = 1;
+    }
+  }
 
-  // Construct a new symbol table node and fill in its fields.
-  // Parameter:  A line of the text file
-  Node( String pline) {
-    pleft = pright = null;
-    linestate = freshnode;
-    // linenum field is not always valid     
-    line = pline;
+  // Spread the bits of the line hash, since the table uses the low bits.
+  static int hash( SourceLine pline ) {
+    int h = pline.contentHash();
+    return h ^ (h >>> 16);
   }
 
-  // Searches tree for a match to the line.
-  // Parameter: a line of text
-  // If node's linestate == freshnode, then created the node.
-  static Node matchsymbol( String pline ) {
-    int comparison;
-    Node pnode = panchor;
-    if ( panchor == null ) return panchor = new Node( pline);
-    for(;;) {
-      comparison = pnode.line.compareTo(pline);
-      if ( comparison == 0 ) return pnode;          // found
+  // The line of an id returned by addSymbol.
+  String getLine( int id ) {
+    return lines[ id ];
+  }
 
-      if ( comparison < 0 ) {
-        if ( pnode.pleft == null ) {
-          pnode.pleft = new Node( pline);
-          return pnode.pleft;
+  // Saves line into the symbol table.
+  // Returns the id of the symtab entry for that unique line, equal lines get equal ids.
+  // A String of the line is only made the first time the line is seen.
+  int addSymbol( SourceLine pline ) {
+    int h = hash( pline );
+    int mask = slots.length - 1;
+    for( int i = h & mask; ; i = (i + 1) & mask ) {
+      if ( marks[ i ] != generation ) {
+        int id = size++;
+        if ( id == lines.length ) {
+          String grown[] = new String[ lines.length * 2 ];
+          System.arraycopy( lines, 0, grown, 0, lines.length );
+          lines = grown;
         }
-        pnode = pnode.pleft;
-      }
-      if ( comparison > 0 ) {
-        if ( pnode.pright == null ) {
-          pnode.pright = new Node( pline);
-          return pnode.pright;
+        lines[ id ] = pline.toString();
+        slots[ i ] = id + 1;
+        hashes[ i ] = h;
+        marks[ i ] = generation;
+        if ( size * 2 > slots.length ) {
+          grow();
         }
-        pnode = pnode.pright;
+        return id;
+      }
+      int id = slots[ i ] - 1;
+      if ( hashes[ i ] == h && pline.contentEquals( lines[ id ] ) ) {
+        return id;   // found
       }
     }
-    // NOTE: There are return stmts, so control does not get here.
   }
 
-  // Saves line into the symbol table.
-  // Returns a handle to the symtab entry for that unique line.
-  // If inoldfile nonzero, then linenum is remembered.
-  static Node addSymbol( String pline, boolean inoldfile, int linenum ) {
-    Node pnode;
-    pnode = matchsymbol( pline );  // find the node in the tree
-    if ( pnode.linestate == freshnode ) {
-      pnode.linestate = inoldfile ? oldonce : newonce;
-    } else {
-      if (( pnode.linestate == oldonce && !inoldfile ) || ( pnode.linestate == newonce &&  inoldfile )) {
-        pnode.linestate = bothonce;
-      }
-      else {
-        pnode.linestate = other;
+  // Double the table when it is half full, to keep the probe sequences short.
+  void grow() {
+    int oldslots[] = slots;
+    int oldhashes[] = hashes;
+    int oldmarks[] = marks;
+    slots = new int[ oldslots.length * 2 ];
+    hashes = new int[ oldslots.length * 2 ];
+    marks = new int[ oldslots.length * 2 ];
+    int mask = slots.length - 1;
+    for( int j = 0; j < oldslots.length; j++ ) {
+      if ( oldmarks[ j ] == generation ) {
+        int i = oldhashes[ j ] & mask;
+        while ( marks[ i ] == generation ) {
+          i = (i + 1) & mask;
+        }
+        slots[ i ] = oldslots[ j ];
+        hashes[ i ] = oldhashes[ j ];
+        marks[ i ] = generation;
       }
     }
-    if (inoldfile) {
-      pnode.linenum = linenum;
-    }
-    return pnode;
-  }
-
-  // Arg is a ptr previously returned by addSymbol.
-  // Returns true if the line was added to the symbol table exactly once with inoldfile true, 
-  // and exactly once with inoldfile false.
-  boolean symbolIsUnique() {
-    return (linestate == bothonce );
-  }
-
-  // Prints the line to stdout.
-  void showSymbol() {
-    System.out.println(line);
   }
 }
-
-
-
-
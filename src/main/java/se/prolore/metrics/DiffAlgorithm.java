@@ -0,0 +1,13 @@
+package se.prolore.metrics;
+
+// Finds the lines that two files have in common, used by Diff to count code churn.
+// The lines are given as symbol ids, equal lines have equal ids.
+public interface DiffAlgorithm {
+
+  // Match the lines of the old file with the lines of the new file.
+  // oldIds[1..oldMax] and newIds[1..newMax] are the ids of the lines, all ids are less than nrOfIds.
+  // Expects oldOther and newOther to be -1, except the pseudolines 0 and max+1 which match each other.
+  // Sets oldOther[oldline] to the matching line# in the new file and newOther[newline] to the
+  // matching line# in the old file. Lines without a match are left at -1.
+  void match(int[] oldIds, int oldMax, int[] newIds, int newMax, int nrOfIds, int[] oldOther, int[] newOther);
+}
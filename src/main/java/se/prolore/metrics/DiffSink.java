@@ -0,0 +1,21 @@
+package se.prolore.metrics;
+
+// Receives the differences that Diff finds while it counts code churn.
+// Diff only counts when no sink is given; a sink is needed to see the changed lines.
+// The status of a line is one of Diff.deleted, Diff.added, Diff.changed, Diff.movenew or Diff.moveold.
+public interface DiffSink {
+
+  // A new file pair is compared
+  void startFile(String oldFile, String newFile);
+
+  // A line of the old file that is not in the new file at this place.
+  // newLineNr is the line of the new file it was before.
+  void oldLine(int status, int oldLineNr, int newLineNr, String line);
+
+  // A line of the new file that is not in the old file at this place.
+  // oldLineNr is the line of the old file it is before.
+  void newLine(int status, int oldLineNr, int newLineNr, String line);
+
+  // The file pair is done
+  void endFile();
+}
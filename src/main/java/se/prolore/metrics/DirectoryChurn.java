@@ -0,0 +1,264 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Pairs the source files of an old and a new directory tree, to count the code churn between them.
+//
+// Files are first paired by their path relative to the root of each tree. The files left
+// without a pair are then compared by content to find files that were renamed or moved:
+// every such file gets a MinHash sketch of its lines, and the new sketches are indexed by
+// bands (locality sensitive hashing) so an old file is only compared with the new files
+// that share at least one band with it.
+// What is still left after that is a deleted (old) or an added (new) file.
+public class DirectoryChurn {
+  // Nr of min hashes in a sketch, and Nr of min hashes in each band of the index
+  static final int SKETCH_SIZE = 60;
+  static final int BAND_ROWS = 3;
+
+  // Share of equal min hashes needed to take two files as the same file renamed
+  static final float RENAME_SIMILARITY = 0.6f;
+
+  private final List<FilePair> pairs = new ArrayList<FilePair>();
+  private final List<ComplexityParser> addedFiles = new ArrayList<ComplexityParser>();
+  private final List<ComplexityParser> deletedFiles = new ArrayList<ComplexityParser>();
+  private int renamedFiles = 0;
+
+  // Pair the files of the old tree with the files of the new tree
+  public void pairFiles(final File oldRoot, final SourceFiles oldFiles, final File newRoot, final SourceFiles newFiles,
+      final WorkerPool workers) {
+    Map<String, ComplexityParser> oldByPath = new HashMap<String, ComplexityParser>(oldFiles.getNrOfFiles() * 2);
+    for (int i = 0; i < oldFiles.getNrOfFiles(); i++) {
+      ComplexityParser parser = oldFiles.getParser(i);
+      oldByPath.put(relativePath(oldRoot, parser.getSourceFile()), parser);
+    }
+
+    // Same relative path, same file
+    List<ComplexityParser> unpairedNew = new ArrayList<ComplexityParser>();
+    for (int i = 0; i < newFiles.getNrOfFiles(); i++) {
+      ComplexityParser parser = newFiles.getParser(i);
+      ComplexityParser oldParser = oldByPath.remove(relativePath(newRoot, parser.getSourceFile()));
+      if (oldParser != null) {
+        pairs.add(new FilePair(oldParser, parser));
+      }
+      else {
+        unpairedNew.add(parser);
+      }
+    }
+
+    List<ComplexityParser> unpairedOld = new ArrayList<ComplexityParser>();
+    for (int i = 0; i < oldFiles.getNrOfFiles(); i++) {
+      ComplexityParser parser = oldFiles.getParser(i);
+      if (oldByPath.get(relativePath(oldRoot, parser.getSourceFile())) == parser) {
+        unpairedOld.add(parser);
+      }
+    }
+
+    findRenames(unpairedOld, unpairedNew, workers);
+  }
+
+  // Files that exist in both trees, including the renamed ones
+  public List<FilePair> getPairs() {
+    return pairs;
+  }
+
+  // Files that only exist in the new tree
+  public List<ComplexityParser> getAddedFiles() {
+    return addedFiles;
+  }
+
+  // Files that only exist in the old tree
+  public List<ComplexityParser> getDeletedFiles() {
+    return deletedFiles;
+  }
+
+  public int getRenamedFiles() {
+    return renamedFiles;
+  }
+
+  // A possible rename, an old and a new file with similar content
+  private static class Match {
+    final int oldIndex;
+    final int newIndex;
+    final float similarity;
+
+    Match(final int oldIndex, final int newIndex, final float similarity) {
+      this.oldIndex = oldIndex;
+      this.newIndex = newIndex;
+      this.similarity = similarity;
+    }
+  }
+
+  // Pair the unpaired files that have similar content, the most similar first
+  private void findRenames(final List<ComplexityParser> unpairedOld, final List<ComplexityParser> unpairedNew,
+      final WorkerPool workers) {
+    List<Match> matches = new ArrayList<Match>();
+
+    if (!unpairedOld.isEmpty() && !unpairedNew.isEmpty()) {
+      int[][] oldSketches = sketchAll(unpairedOld, workers);
+      int[][] newSketches = sketchAll(unpairedNew, workers);
+
+      // Index the new files by each band of their sketch
+      Map<Long, List<Integer>> index = new HashMap<Long, List<Integer>>();
+      for (int j = 0; j < newSketches.length; j++) {
+        if (newSketches[j] != null) {
+          for (int band = 0; band < SKETCH_SIZE / BAND_ROWS; band++) {
+            Long key = bandKey(newSketches[j], band);
+            List<Integer> files = index.get(key);
+            if (files == null) {
+              files = new ArrayList<Integer>(2);
+              index.put(key, files);
+            }
+            files.add(j);
+          }
+        }
+      }
+
+      // Only compare with the new files that share a band
+      for (int i = 0; i < oldSketches.length; i++) {
+        if (oldSketches[i] != null) {
+          Set<Integer> compared = new HashSet<Integer>();
+          for (int band = 0; band < SKETCH_SIZE / BAND_ROWS; band++) {
+            List<Integer> files = index.get(bandKey(oldSketches[i], band));
+            if (files != null) {
+              for (Integer j : files) {
+                if (compared.add(j)) {
+                  float similarity = similarity(oldSketches[i], newSketches[j]);
+                  if (similarity >= RENAME_SIMILARITY) {
+                    matches.add(new Match(i, j, similarity));
+                  }
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    Collections.sort(matches, new Comparator<Match>() {
+      public int compare(final Match a, final Match b) {
+        if (a.similarity != b.similarity) {
+          return a.similarity > b.similarity ? -1 : 1;
+        }
+        if (a.oldIndex != b.oldIndex) {
+          return a.oldIndex < b.oldIndex ? -1 : 1;
+        }
+        return a.newIndex < b.newIndex ? -1 : (a.newIndex == b.newIndex ? 0 : 1);
+      }
+    });
+
+    boolean[] oldTaken = new boolean[unpairedOld.size()];
+    boolean[] newTaken = new boolean[unpairedNew.size()];
+    for (Match match : matches) {
+      if (!oldTaken[match.oldIndex] && !newTaken[match.newIndex]) {
+        oldTaken[match.oldIndex] = true;
+        newTaken[match.newIndex] = true;
+        pairs.add(new FilePair(unpairedOld.get(match.oldIndex), unpairedNew.get(match.newIndex)));
+        renamedFiles++;
+      }
+    }
+
+    for (int i = 0; i < oldTaken.length; i++) {
+      if (!oldTaken[i]) {
+        deletedFiles.add(unpairedOld.get(i));
+      }
+    }
+    for (int j = 0; j < newTaken.length; j++) {
+      if (!newTaken[j]) {
+        addedFiles.add(unpairedNew.get(j));
+      }
+    }
+  }
+
+  // Calculate the sketches of all files, at the same time
+  private int[][] sketchAll(final List<ComplexityParser> files, final WorkerPool workers) {
+    final int[][] sketches = new int[files.size()][];
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    for (int i = 0; i < files.size(); i++) {
+      final int index = i;
+      final File file = files.get(i).getSourceFile();
+      tasks.add(new Runnable() {
+        public void run() {
+          sketches[index] = sketch(file);
+        }
+      });
+    }
+    workers.runAll(tasks);
+    return sketches;
+  }
+
+  // MinHash sketch of the set of lines in a file. Empty and trivial lines are left out,
+  // since every file has them. Returns null if the file has no other lines.
+  static int[] sketch(final File file) {
+    int[] sketch = new int[SKETCH_SIZE];
+    Arrays.fill(sketch, Integer.MAX_VALUE);
+    boolean anyLine = false;
+    try {
+      SourceText text = SourceText.read(file);
+      SourceLine line = new SourceLine();
+      SourceLine strLine = new SourceLine();
+
+      while (text.nextLine(line)) {
+        strLine.setTrimmed(line, 0, line.length());
+        if (strLine.length() == 0 || (strLine.length() == 1 && (strLine.charAt(0) == '{' || strLine.charAt(0) == '}'))) {
+          continue;
+        }
+        anyLine = true;
+        int lineHash = strLine.contentHash();
+        for (int k = 0; k < SKETCH_SIZE; k++) {
+          int value = mix(lineHash + k * 0x9E3779B9);
+          if (value < sketch[k]) {
+            sketch[k] = value;
+          }
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      return null;
+    }
+    return anyLine ? sketch : null;
+  }
+
+  // Estimated Jaccard similarity of the two line sets
+  static float similarity(final int[] a, final int[] b) {
+    int equal = 0;
+    for (int k = 0; k < SKETCH_SIZE; k++) {
+      if (a[k] == b[k]) {
+        equal++;
+      }
+    }
+    return (float) equal / SKETCH_SIZE;
+  }
+
+  private static Long bandKey(final int[] sketch, final int band) {
+    long key = band;
+    for (int k = band * BAND_ROWS; k < (band + 1) * BAND_ROWS; k++) {
+      key = key * 0x100000001B3L + sketch[k];
+    }
+    return key;
+  }
+
+  // Murmur3 finalizer, turns k into a new hash function
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  // The path of a file below root, with '/' between the names
+  static String relativePath(final File root, final File file) {
+    return root.getAbsoluteFile().toPath().relativize(file.getAbsoluteFile().toPath()).toString()
+        .replace(File.separatorChar, '/');
+  }
+}
@@ -0,0 +1,20 @@
+package se.prolore.metrics;
+
+// An old and a new version of the same source file, compared to count code churn
+public class FilePair {
+  private final ComplexityParser oldFile;
+  private final ComplexityParser newFile;
+
+  public FilePair(final ComplexityParser oldFile, final ComplexityParser newFile) {
+    this.oldFile = oldFile;
+    this.newFile = newFile;
+  }
+
+  public ComplexityParser getOldFile() {
+    return oldFile;
+  }
+
+  public ComplexityParser getNewFile() {
+    return newFile;
+  }
+}
@@ -0,0 +1,38 @@
+package se.prolore.metrics;
+
+// The rules of one language: which lines are comments, statements or trivial, which words
+// declare a type and which tokens add to the complexity of a method. A FileType has no
+// state, one instance serves all files of its language (see FileTypes), so the language
+// is chosen once per file and not per line.
+public interface FileType {
+  // The category of a token, see category()
+  int NONE = 0;
+  int SELECTION = 1;
+  int LOOP = 2;
+  int OPERATOR = 3;
+  int EXCEPTION = 4;
+  // A keyword that declares a type, as class, it adds nothing to the complexity
+  int DECLARATION = 5;
+
+  // The name used with -lang, e.g. "java"
+  String getName();
+
+  // Identifies the rules, results made with other rules are not reused (see AnalysisCache)
+  String getRulesVersion();
+
+  // The lines are CharSequences, so they can be Strings or SourceLines read straight from the file
+  boolean isLineStatement(CharSequence strLine);
+
+  boolean lineIsTrivial(CharSequence strLine);
+
+  // False for a language without methods, its lines are only counted
+  boolean hasMethods();
+
+  // The category of the token between start and end in the line
+  int category(CharSequence line, int start, int end);
+
+  // A lexer for the tokens of the language
+  Lexer newLexer();
+
+  String getLineComment();
+}
@@ -0,0 +1,97 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The languages, found by the extension of the file name. Each language has one FileType,
+// made when this class is loaded, and all files of the language share it.
+public class FileTypes {
+	static final FileType JAVA = new JavaFileType();
+
+	private static final List<FileType> ALL = new ArrayList<FileType>();
+	private static final Map<String, FileType> byExtension = new LinkedHashMap<String, FileType>();
+	// The languages of -lang, only Java by default so the totals of a run stay what they were
+	// before the other languages were added
+	private static volatile Map<String, FileType> enabled;
+
+	static {
+		register(JAVA, "java");
+		register(new CSharpFileType(), "cs");
+		register(new CppFileType(), "cpp", "cc", "cxx", "c++", "hpp", "hh", "hxx", "c", "h");
+		register(new XmlFileType(), "xml");
+		enabled = new LinkedHashMap<String, FileType>();
+		enabled.put("java", JAVA);
+	}
+
+	private static void register(final FileType type, final String... extensions) {
+		ALL.add(type);
+		for (String extension : extensions) {
+			byExtension.put(extension, type);
+		}
+	}
+
+	// Only take the files of the named languages, e.g. "java" and "cs".
+	// Throws IllegalArgumentException for an unknown name.
+	static void setLanguages(final List<String> names) {
+		Map<String, FileType> languages = new LinkedHashMap<String, FileType>();
+		for (String name : names) {
+			FileType type = forName(name);
+			if (type == null) {
+				throw new IllegalArgumentException("Unknown language " + name);
+			}
+			for (Map.Entry<String, FileType> entry : byExtension.entrySet()) {
+				if (entry.getValue() == type) {
+					languages.put(entry.getKey(), type);
+				}
+			}
+		}
+		enabled = languages;
+	}
+
+	static FileType forName(final String name) {
+		for (FileType type : ALL) {
+			if (type.getName().equals(name)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	// The language of a file, null if it is not one of the languages taken
+	static FileType forFile(final String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		return enabled.get(fileName.substring(dot + 1).toLowerCase());
+	}
+
+	static FileType forFile(final File file) {
+		return forFile(file.getName());
+	}
+
+	// The names of all languages, e.g. for the usage
+	static String getNames() {
+		StringBuilder names = new StringBuilder();
+		for (FileType type : ALL) {
+			names.append(names.length() == 0 ? "" : ", ").append(type.getName());
+		}
+		return names.toString();
+	}
+
+	// Identifies the rules of the languages taken, see AnalysisCache. With only Java it is the
+	// version of the Java rules, as it was before there were other languages, so a cache made
+	// then is still used.
+	static String getRulesVersion() {
+		StringBuilder rules = new StringBuilder();
+		for (FileType type : ALL) {
+			if (enabled.containsValue(type)) {
+				rules.append(type == JAVA ? "" : " " + type.getName() + "=").append(type.getRulesVersion());
+			}
+		}
+		return rules.toString();
+	}
+}
@@ -0,0 +1,141 @@
+package se.prolore.metrics;
+
+//////////////////////////////////////////////////////////////////////////////
+// Class: HeckelDiff
+//
+// Paul Heckel's algorithm (1978). Lines that are used exactly once in each file
+// are matched first, the matches are then extended to the lines before and after
+// them. Finds moved blocks, but few matches when most lines are repeated.
+//////////////////////////////////////////////////////////////////////////////
+
+public class HeckelDiff implements DiffAlgorithm {
+  int oldIds[], newIds[];
+  int oldMax, newMax;
+  int oldOther[], newOther[];
+
+  // Per id, kept for the next match and only grown, see scanUnique
+  int oldCount[];   // Nr uses of each id in the old file
+  int newCount[];   // Nr uses of each id in the new file
+  int oldLine[];    // line# of the id in the old file
+
+  public void match(int[] oldIds, int oldMax, int[] newIds, int newMax, int nrOfIds, int[] oldOther, int[] newOther) {
+    this.oldIds = oldIds;
+    this.newIds = newIds;
+    this.oldMax = oldMax;
+    this.newMax = newMax;
+    this.oldOther = oldOther;
+    this.newOther = newOther;
+
+    scanUnique( nrOfIds );  // scan for lines used once in both files
+    scanAfter();            // scan past sure-matches for non-unique blocks 
+    scanBefore();           // scan backwards from sure-matches
+
+    this.oldIds = this.newIds = this.oldOther = this.newOther = null;
+  }
+
+  //Scans for lines which are used exactly once in each file.
+  //The appropriate "other" array entries are set to the line# in the other file.
+  void scanUnique( int nrOfIds ) {
+    int oldline, newline;
+    if ( oldCount == null || oldCount.length < nrOfIds ) {
+      oldCount = new int[ nrOfIds ];
+      newCount = new int[ nrOfIds ];
+      oldLine = new int[ nrOfIds ];
+    }
+
+    for( oldline = 1; oldline <= oldMax; oldline++ ) {
+      oldCount[ oldIds[ oldline ] ]++;
+      oldLine[ oldIds[ oldline ] ] = oldline;
+    }
+    for( newline = 1; newline <= newMax; newline++ ) {
+      newCount[ newIds[ newline ] ]++;
+    }
+
+    for( newline = 1; newline <= newMax; newline++ ) {
+      int id = newIds[ newline ];
+      if ( oldCount[ id ] == 1 && newCount[ id ] == 1 ) {  // 1 use in each file
+        oldline = oldLine[ id ];
+        newOther[ newline ] = oldline;   // record 1-1 map
+        oldOther[ oldline ] = newline;
+      }
+    }
+
+    // Leave the counts at zero for the next match, only the ids of these files were used
+    for( oldline = 1; oldline <= oldMax; oldline++ ) {
+      oldCount[ oldIds[ oldline ] ] = 0;
+    }
+    for( newline = 1; newline <= newMax; newline++ ) {
+      newCount[ newIds[ newline ] ] = 0;
+    }
+  }
+
+  //Expects the "other" arrays contain positive #s to indicate lines that are unique in both files.
+  //For each such pair of places, scans past in each file.
+  //Contiguous groups of lines that match non-uniquely are taken to be good-enough matches, and so marked in "other".
+  //Assumes each other[0] is 0.
+  void scanAfter() {
+    int oldline, newline;
+
+    for( newline = 0; newline <= newMax; newline++ ) {
+      oldline = newOther[ newline ];
+      if ( oldline >= 0 ) {   // is unique in old & new
+        for(;;) {             // scan after there in both files
+          if ( ++oldline > oldMax   ) {
+            break; 
+          }
+          if ( oldOther[ oldline ] >= 0 ) { 
+            break;
+          }
+          if ( ++newline > newMax   ) { 
+            break; 
+          }
+          if ( newOther[ newline ] >= 0 ) { 
+            break;
+          }
+          // oldline & newline exist, and aren't already matched
+
+          if ( newIds[ newline ] != oldIds[ oldline ] ) { 
+            break;  // not same
+          }
+
+          newOther[newline] = oldline; // record a match
+          oldOther[oldline] = newline;
+        }
+      }
+    }
+  }
+
+  //As scanafter, except scans towards file fronts.
+  //Assumes the off-end lines have been marked as a match.
+  void scanBefore() {
+    int oldline, newline;
+
+    for( newline = newMax + 1; newline > 0; newline-- ) {
+      oldline = newOther[ newline ];
+      if ( oldline >= 0 ) {   // unique in each
+        for(;;) {
+          if ( --oldline <= 0 ) {
+            break;
+          }
+          if ( oldOther[ oldline ] >= 0 ) { 
+            break;
+          }
+          if ( --newline <= 0 ) { 
+            break;
+          }
+          if ( newOther[ newline ] >= 0 ) { 
+            break;
+          }
+          // oldline and newline exist, and aren't marked yet
+
+          if ( newIds[ newline ] != oldIds[ oldline ] ) {
+            break;  // not same
+          }
+
+          newOther[newline] = oldline; // record a match
+          oldOther[oldline] = newline;
+        }
+      }
+    }
+  }
+}
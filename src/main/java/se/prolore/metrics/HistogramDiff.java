@@ -0,0 +1,144 @@
+package se.prolore.metrics;
+
+//////////////////////////////////////////////////////////////////////////////
+// Class: HistogramDiff
+//
+// The histogram diff of "git diff --histogram" (from JGit). A histogram of the
+// old part counts how often each line is used. The longest common run of lines
+// that contains the least used line is matched, and the parts before and after
+// it are solved the same way. Parts where every common line is used more than
+// MAXCHAINLENGTH times are left to MyersDiff.
+// Gives readable results on files with many repeated lines ( "}", "return;" ).
+//////////////////////////////////////////////////////////////////////////////
+
+public class HistogramDiff implements DiffAlgorithm {
+  static final int MAXCHAINLENGTH = 64;
+
+  int oldIds[], newIds[];
+  int oldOther[], newOther[];
+
+  // Kept for the next match and only grown, findRun leaves count and head at zero
+  int count[];      // Nr uses of each id in the old part being split
+  int head[];       // first line# of each id in the old part, 0 means none
+  int next[];       // next line# with the same id as this old line, 0 means none
+
+  MyersDiff fallback = new MyersDiff();
+
+  // The common run found by findRun
+  int runOld, runNew, runLength;
+
+  public void match(int[] oldIds, int oldMax, int[] newIds, int newMax, int nrOfIds, int[] oldOther, int[] newOther) {
+    this.oldIds = oldIds;
+    this.newIds = newIds;
+    this.oldOther = oldOther;
+    this.newOther = newOther;
+    if (count == null || count.length < nrOfIds) {
+      count = new int[nrOfIds];
+      head = new int[nrOfIds];
+    }
+    if (next == null || next.length < oldMax + 2) {
+      next = new int[oldMax + 2];
+    }
+
+    compare(1, oldMax + 1, 1, newMax + 1);
+
+    this.oldIds = this.newIds = this.oldOther = this.newOther = null;
+  }
+
+  // Match the common lines of oldIds[oldLo..oldHi-1] and newIds[newLo..newHi-1]
+  void compare(int oldLo, int oldHi, int newLo, int newHi) {
+    while (oldLo < oldHi && newLo < newHi) {
+      int result = findRun(oldLo, oldHi, newLo, newHi);
+      if (result < 0) {
+        // Only lines used too often in common, let Myers do it
+        fallback.match(oldIds, oldLo, oldHi, newIds, newLo, newHi, oldOther, newOther);
+        return;
+      }
+      if (result == 0) {
+        return;   // nothing in common
+      }
+
+      int runO = runOld, runN = runNew, runL = runLength;
+      for (int i = 0; i < runL; i++) {
+        oldOther[runO + i] = runN + i;
+        newOther[runN + i] = runO + i;
+      }
+
+      // Solve the smaller side by recursion and the larger one in this loop
+      if ((runO - oldLo) + (runN - newLo) < (oldHi - runO - runL) + (newHi - runN - runL)) {
+        compare(oldLo, runO, newLo, runN);
+        oldLo = runO + runL;
+        newLo = runN + runL;
+      }
+      else {
+        compare(runO + runL, oldHi, runN + runL, newHi);
+        oldHi = runO;
+        newHi = runN;
+      }
+    }
+  }
+
+  // Find the common run with the least used line, leave it in runOld, runNew and runLength.
+  // Returns 1 when a run was found, 0 when the parts have nothing in common and
+  // -1 when the common lines are all used more than MAXCHAINLENGTH times.
+  int findRun(int oldLo, int oldHi, int newLo, int newHi) {
+    // Build the histogram of the old part
+    for (int i = oldHi - 1; i >= oldLo; i--) {
+      int id = oldIds[i];
+      next[i] = head[id];
+      head[id] = i;
+      count[id]++;
+    }
+
+    boolean anyCommon = false;
+    int bestCount = MAXCHAINLENGTH + 1;
+    runLength = 0;
+
+    for (int j = newLo; j < newHi; ) {
+      int id = newIds[j];
+      int nextJ = j + 1;
+      if (count[id] > 0) {
+        anyCommon = true;
+        if (count[id] <= bestCount && count[id] <= MAXCHAINLENGTH) {
+          for (int i = head[id]; i != 0; i = next[i]) {
+            // Extend the match of line i and line j both ways
+            int os = i, ns = j, oe = i + 1, ne = j + 1;
+            int lowest = count[id];
+            while (os > oldLo && ns > newLo && oldIds[os - 1] == newIds[ns - 1]) {
+              os--;
+              ns--;
+              lowest = Math.min(lowest, count[oldIds[os]]);
+            }
+            while (oe < oldHi && ne < newHi && oldIds[oe] == newIds[ne]) {
+              lowest = Math.min(lowest, count[oldIds[oe]]);
+              oe++;
+              ne++;
+            }
+            if (lowest < bestCount || (lowest == bestCount && oe - os > runLength)) {
+              bestCount = lowest;
+              runOld = os;
+              runNew = ns;
+              runLength = oe - os;
+            }
+            if (ne > nextJ) {
+              nextJ = ne;   // the lines up to ne are part of this run already
+            }
+          }
+        }
+      }
+      j = nextJ;
+    }
+
+    // Clear the histogram for the next part
+    for (int i = oldLo; i < oldHi; i++) {
+      int id = oldIds[i];
+      head[id] = 0;
+      count[id] = 0;
+    }
+
+    if (runLength > 0) {
+      return 1;
+    }
+    return anyCommon ? -1 : 0;
+  }
+}
@@ -1,117 +1,104 @@
 package se.prolore.metrics;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public class JavaFileType {
+public class JavaFileType implements FileType {
 
-	private List<String> selectionKeyWords;
-	private List<String> loopKeyWords;
-	private List<String> operators;
-	private List<String> exceptions;
-	
+	// Version of the rules of this class and of how ComplexityParser and Method use them.
+	// Increase it when a rule changes, so results made with the old rules are not reused (see AnalysisCache).
+	static final int RULES_VERSION = 4;
+
+	// The keywords and operators are the same for every file, so the table is made once
+	private static final KeywordTable JAVA_KEYWORDS = new KeywordTable()
+		.add(SELECTION, "if", "else", "case", "default")
+		.add(LOOP, "for", "while", "do", "break", "continue")
+		.add(OPERATOR, "&&", "||", "?", ":")
+		.add(EXCEPTION, "catch", "try", "finally", "throw", "throws")
+		.add(DECLARATION, "class", "interface", "enum", "record");
+
+	private final KeywordTable keywords;
 	
 	public JavaFileType() {
-		selectionKeyWords = new ArrayList<String>();
-		selectionKeyWords.add("if");
-		selectionKeyWords.add("else");
-		selectionKeyWords.add("case");
-		selectionKeyWords.add("default");
-		
-		loopKeyWords = new ArrayList<String>();
-		loopKeyWords.add("for");
-		loopKeyWords.add("while");
-		loopKeyWords.add("do");
-		loopKeyWords.add("break");
-		loopKeyWords.add("continue");
-		
-		operators = new ArrayList<String>();
-		operators.add("&&");
-		operators.add("||");
-		operators.add("?");
-		operators.add(":");
-		
-		exceptions = new ArrayList<String>();
-		exceptions.add("catch");
-		exceptions.add("try");
-		exceptions.add("finally");
-		exceptions.add("throw");
-		exceptions.add("throws");		
+		this(JAVA_KEYWORDS);
+	}
+
+	// For a language with the syntax of Java and other keywords
+	protected JavaFileType(final KeywordTable keywords) {
+		this.keywords = keywords;
+	}
+
+	public String getName() {
+		return "java";
 	}
 
-	public boolean isLineStatement(String strLine) {
-		return strLine.endsWith(";");
+	// The category of the text between start and end in the line: SELECTION, LOOP,
+	// OPERATOR, EXCEPTION or DECLARATION if it is one of the keywords or operators, else NONE
+	public int category(final CharSequence line, final int start, final int end) {
+		return keywords.category(line, start, end);
 	}
 
-	public boolean isLineComment(String strLine) {
-		return strLine.startsWith("//") || strLine.startsWith("/*") || strLine.startsWith("*");
+	public Lexer newLexer() {
+		return new JavaLexer();
 	}
 
-	public boolean lineIsTrivial(String strLine) {
-		return strLine.equals("{") || strLine.equals("}");
+	// Identifies the rules, including the keyword lists
+	public String getRulesVersion() {
+		return RULES_VERSION + ":" + keywords;
+	}
+
+	// The lines are CharSequences, so they can be Strings or SourceLines read straight from the file
+
+	public boolean isLineStatement(CharSequence strLine) {
+		return endsWith(strLine, ";");
+	}
+
+	public boolean lineIsTrivial(CharSequence strLine) {
+		return strLine.length() == 1 && (strLine.charAt(0) == '{' || strLine.charAt(0) == '}');
 	}
 	
 	public List<String> getSelectionKeyWords(){
-		return selectionKeyWords;
+		return keywords.getWords(SELECTION);
 	}
 	
 	public List<String> getLoopKeyWords(){
-		return loopKeyWords;
+		return keywords.getWords(LOOP);
 	}
 	
 	public List<String> getOperators(){
-		return operators;
+		return keywords.getWords(OPERATOR);
 	}
 	
 	public List<String> getExceptions(){
-		return exceptions;
+		return keywords.getWords(EXCEPTION);
 	}
 	
 	public boolean isSelectionKeyWord(String keyword) {
-		return selectionKeyWords.contains(keyword);
+		return category(keyword, 0, keyword.length()) == SELECTION;
 	}
 	
-	  // Douse line start with catch, finally, throw, throws?
-	  private boolean isExceptions(final String strLine) {
-	    if (exceptions.contains(strLine)) {
-	      return true;
-	    }
-	    return false;
-	  }	
-	
-	  // Does line start with if, else, case, default?
-	  private boolean isSelections(final String strLine) {
-	    if (selectionKeyWords.contains(strLine)) {
-	      return true;
-	    }
-	    return false;
+	  // The methods are found by MethodDetector
+	  public boolean hasMethods() {
+	    return true;
 	  }
 	  
-	  // Does line start with for, while, do, break, continue?
-	  private boolean isLoops(final String strLine) {
-	    if (loopKeyWords.contains(strLine)) {
-	      return true;
-	    }
-	    return false;
+	  public String getLineComment() {
+		  return "//";
 	  }
-	  
-	  // Is this a method declaration?
-	  public boolean isMethod(final String strLine) {
-	    if (!isSelections(strLine) && !isLoops(strLine) && !isExceptions(strLine) && !strLine.contains("class ")) {
-	      return verifyMethod(strLine);
-	    }
-	    return false;
+
+	  static boolean endsWith(final CharSequence strLine, final String suffix) {
+	    return regionMatches(strLine, strLine.length() - suffix.length(), suffix);
 	  }
-	  
-	  // Is this really a method declaration?
-	  private boolean verifyMethod (final String strLine) {
-	      if (!strLine.contains("(")) {
-		  return false;
+
+	  // Is text found in the line at offset?
+	  private static boolean regionMatches(final CharSequence strLine, final int offset, final String text) {
+	    if (offset < 0 || offset + text.length() > strLine.length()) {
+	      return false;
+	    }
+	    for (int i = 0; i < text.length(); i++) {
+	      if (strLine.charAt(offset + i) != text.charAt(i)) {
+	        return false;
 	      }
-	      return true;
-	  }
-	  
-	  public String getLineComment() {
-		  return "//";
+	    }
+	    return true;
 	  }
 }
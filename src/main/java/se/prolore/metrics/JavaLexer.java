@@ -0,0 +1,237 @@
+package se.prolore.metrics;
+
+// Splits lines of Java source code into tokens in one pass over the characters.
+// Characters above ASCII are taken as parts of identifiers, so a line may also be
+// given as the bytes of UTF-8 (see SourceLine).
+// Knows identifiers, numbers, operators, string and char literals, text blocks and
+// line and block comments. The lexer keeps its state from one line to the next, so
+// block comments and text blocks that span several lines are recognized.
+//
+// Usage: call setLine() for each line, then next() until it returns END.
+public class JavaLexer implements Lexer {
+  // State at the end of a line
+  static final int CODE = 0, BLOCK_COMMENT = 1, TEXT_BLOCK = 2;
+
+  // Operators of two characters, all other operators are one character
+  static final String[] TWO_CHAR_OPERATORS = {
+    "&&", "||", "::", "->", "==", "!=", "<=", ">=", "++", "--",
+    "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^="
+  };
+
+  private final String[] twoCharOperators;
+  private int state = CODE;
+  private CharSequence line = "";
+  private int pos = 0;
+  private int tokenStart = 0;
+  private int tokenEnd = 0;
+
+  // A lexer for Java
+  public JavaLexer() {
+    this(TWO_CHAR_OPERATORS);
+  }
+
+  // A lexer for a language with the syntax of Java and other operators of two characters
+  public JavaLexer(final String[] twoCharOperators) {
+    this.twoCharOperators = twoCharOperators;
+  }
+
+  // Forget the state of the previous lines
+  public void reset() {
+    state = CODE;
+    line = "";
+    pos = tokenStart = tokenEnd = 0;
+  }
+
+  // Start on the next line, the state of the previous line is kept
+  public void setLine(final CharSequence line) {
+    this.line = line;
+    pos = 0;
+    tokenStart = tokenEnd = 0;
+  }
+
+  // Is the lexer inside a block comment or a text block at the current position?
+  public boolean inBlockComment() {
+    return state == BLOCK_COMMENT;
+  }
+
+  public boolean inTextBlock() {
+    return state == TEXT_BLOCK;
+  }
+
+  // Find the next token of the line, returns its type or END at the end of the line
+  public int next() {
+    int length = line.length();
+    if (pos >= length) {
+      return endOfLine();
+    }
+
+    if (state == BLOCK_COMMENT) {
+      tokenStart = pos;
+      skipBlockComment();
+      tokenEnd = pos;
+      return COMMENT;
+    }
+    if (state == TEXT_BLOCK) {
+      tokenStart = pos;
+      skipTextBlock();
+      tokenEnd = pos;
+      return LITERAL;
+    }
+
+    // Skip whitespace
+    while (pos < length && Character.isWhitespace(line.charAt(pos))) {
+      pos++;
+    }
+    if (pos >= length) {
+      return endOfLine();
+    }
+    tokenStart = pos;
+
+    char c = line.charAt(pos);
+    int type;
+    if (c >= 0x80 || Character.isJavaIdentifierStart(c)) {
+      pos++;
+      while (pos < length && (line.charAt(pos) >= 0x80 || Character.isJavaIdentifierPart(line.charAt(pos)))) {
+        pos++;
+      }
+      type = IDENTIFIER;
+    }
+    else if (Character.isDigit(c) || (c == '.' && pos + 1 < length && Character.isDigit(line.charAt(pos + 1)))) {
+      pos++;
+      while (pos < length && (Character.isLetterOrDigit(line.charAt(pos)) || line.charAt(pos) == '.'
+          || line.charAt(pos) == '_')) {
+        pos++;
+      }
+      type = LITERAL;
+    }
+    else if (c == '/' && pos + 1 < length && line.charAt(pos + 1) == '/') {
+      pos = length;   // line comment
+      type = COMMENT;
+    }
+    else if (c == '/' && pos + 1 < length && line.charAt(pos + 1) == '*') {
+      pos += 2;
+      state = BLOCK_COMMENT;
+      skipBlockComment();
+      type = COMMENT;
+    }
+    else if (c == '"' && startsWith("\"\"\"", pos)) {
+      pos += 3;
+      state = TEXT_BLOCK;
+      skipTextBlock();
+      type = LITERAL;
+    }
+    else if (c == '"' || c == '\'') {
+      pos++;
+      skipQuoted(c);
+      type = LITERAL;
+    }
+    else {
+      pos++;
+      for (String operator : twoCharOperators) {
+        if (operator.charAt(0) == c && pos < length && operator.charAt(1) == line.charAt(pos)) {
+          pos++;
+          break;
+        }
+      }
+      type = OPERATOR;
+    }
+    tokenEnd = pos;
+    return type;
+  }
+
+  // Let go of the line so it is not kept alive between lines, the state is kept
+  private int endOfLine() {
+    line = "";
+    pos = tokenStart = tokenEnd = 0;
+    return END;
+  }
+
+  public int getTokenStart() {
+    return tokenStart;
+  }
+
+  public int getTokenEnd() {
+    return tokenEnd;
+  }
+
+  public int getTokenLength() {
+    return tokenEnd - tokenStart;
+  }
+
+  public String getTokenText() {
+    return line.subSequence(tokenStart, tokenEnd).toString();
+  }
+
+  // Is the current token exactly text? Does not create any strings.
+  public boolean tokenEquals(final String text) {
+    return text.length() == tokenEnd - tokenStart && startsWith(text, tokenStart);
+  }
+
+  // Is the current token a comment that starts with "//"?
+  public boolean isLineComment() {
+    return startsWith("//", tokenStart) && tokenEnd == line.length();
+  }
+
+  private boolean startsWith(final String text, final int at) {
+    if (at + text.length() > line.length()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (line.charAt(at + i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Move past the end of the block comment, or to the end of the line
+  private void skipBlockComment() {
+    int length = line.length();
+    while (pos < length) {
+      if (line.charAt(pos) == '*' && pos + 1 < length && line.charAt(pos + 1) == '/') {
+        pos += 2;
+        state = CODE;
+        return;
+      }
+      pos++;
+    }
+  }
+
+  // Move past the end of the text block, or to the end of the line
+  private void skipTextBlock() {
+    int length = line.length();
+    while (pos < length) {
+      char c = line.charAt(pos);
+      if (c == '\\') {
+        pos += 2;
+      }
+      else if (c == '"' && startsWith("\"\"\"", pos)) {
+        pos += 3;
+        state = CODE;
+        return;
+      }
+      else {
+        pos++;
+      }
+    }
+    pos = length;
+  }
+
+  // Move past the closing quote of a string or char literal, or to the end of the line
+  private void skipQuoted(final char quote) {
+    int length = line.length();
+    while (pos < length) {
+      char c = line.charAt(pos);
+      if (c == '\\') {
+        pos += 2;
+      }
+      else {
+        pos++;
+        if (c == quote) {
+          return;
+        }
+      }
+    }
+    pos = length;
+  }
+}
@@ -0,0 +1,121 @@
+package se.prolore.metrics;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Custom JFR events for the phases of a run and the files in them. They are only recorded
+// when a flight recording runs, e.g. java -XX:StartFlightRecording=filename=run.jfr ...
+//
+// The event types are made with jdk.jfr.EventFactory through reflection, so this class
+// compiles for Java 8 and loads on a JVM without JFR; isAvailable() is false there and
+// RunStats sends no events.
+class JfrEvents {
+  // The fields of the events, by index
+  private static final int PHASE_NAME = 0, PHASE_FILES = 1, PHASE_LINES = 2, PHASE_BYTES = 3;
+  private static final int FILE_PHASE = 0, FILE_PATH = 1, FILE_TIME = 2, FILE_LINES = 3, FILE_BYTES = 4;
+
+  private static Object phaseFactory = null;   // jdk.jfr.EventFactory of each event type
+  private static Object fileFactory = null;
+  private static Method newEvent, set, begin, end, commit, isEnabled;
+
+  static {
+    try {
+      Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+      Class<?> eventClass = Class.forName("jdk.jfr.Event");
+      newEvent = factoryClass.getMethod("newEvent");
+      set = eventClass.getMethod("set", int.class, Object.class);
+      begin = eventClass.getMethod("begin");
+      end = eventClass.getMethod("end");
+      commit = eventClass.getMethod("commit");
+      isEnabled = eventClass.getMethod("isEnabled");
+
+      phaseFactory = factory(factoryClass, "se.prolore.metrics.Phase", "Phase",
+          field(String.class, "name", "Name", null, null),
+          field(long.class, "files", "Files", null, null),
+          field(long.class, "lines", "Lines", null, null),
+          field(long.class, "bytes", "Bytes", "jdk.jfr.DataAmount", "BYTES"));
+      fileFactory = factory(factoryClass, "se.prolore.metrics.File", "File",
+          field(String.class, "phase", "Phase", null, null),
+          field(String.class, "path", "Path", null, null),
+          field(long.class, "time", "Time", "jdk.jfr.Timespan", "NANOSECONDS"),
+          field(long.class, "lines", "Lines", null, null),
+          field(long.class, "bytes", "Bytes", "jdk.jfr.DataAmount", "BYTES"));
+    } catch (Exception e) {
+      phaseFactory = fileFactory = null;
+    } catch (LinkageError e) {
+      phaseFactory = fileFactory = null;
+    }
+  }
+
+  // Can events be sent in this JVM?
+  static boolean isAvailable() {
+    return phaseFactory != null && fileFactory != null;
+  }
+
+  static Object startPhase(final String name) {
+    Object event = invoke(newEvent, phaseFactory);
+    invoke(set, event, PHASE_NAME, name);
+    invoke(begin, event);
+    return event;
+  }
+
+  static void endPhase(final Object phaseEvent, final long files, final long lines, final long bytes) {
+    invoke(end, phaseEvent);
+    invoke(set, phaseEvent, PHASE_FILES, files);
+    invoke(set, phaseEvent, PHASE_LINES, lines);
+    invoke(set, phaseEvent, PHASE_BYTES, bytes);
+    invoke(commit, phaseEvent);
+  }
+
+  // A file is done, it took nanos
+  static void file(final String phase, final String path, final long nanos, final long lines, final long bytes) {
+    Object event = invoke(newEvent, fileFactory);
+    if ((Boolean) invoke(isEnabled, event)) {
+      invoke(set, event, FILE_PHASE, phase);
+      invoke(set, event, FILE_PATH, path);
+      invoke(set, event, FILE_TIME, nanos);
+      invoke(set, event, FILE_LINES, lines);
+      invoke(set, event, FILE_BYTES, bytes);
+      invoke(commit, event);
+    }
+  }
+
+  // An EventFactory for events with the name, the label, the category CodeMetrics and the fields
+  private static Object factory(final Class<?> factoryClass, final String name, final String label,
+      final Object... fields) throws Exception {
+    List<Object> annotations = new ArrayList<Object>();
+    annotations.add(annotation("jdk.jfr.Name", name));
+    annotations.add(annotation("jdk.jfr.Label", label));
+    annotations.add(annotation("jdk.jfr.Category", new String[] { "CodeMetrics" }));
+    return factoryClass.getMethod("create", List.class, List.class)
+        .invoke(null, annotations, Arrays.asList(fields));
+  }
+
+  // A jdk.jfr.ValueDescriptor of a field with a label, and a unit annotation if unit is not null
+  private static Object field(final Class<?> type, final String name, final String label, final String unit,
+      final String unitValue) throws Exception {
+    List<Object> annotations = new ArrayList<Object>();
+    annotations.add(annotation("jdk.jfr.Label", label));
+    if (unit != null) {
+      annotations.add(annotation(unit, unitValue));
+    }
+    return Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class)
+        .newInstance(type, name, annotations);
+  }
+
+  // A jdk.jfr.AnnotationElement of the annotation with the value
+  private static Object annotation(final String annotationName, final Object value) throws Exception {
+    return Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class)
+        .newInstance(Class.forName(annotationName), value);
+  }
+
+  private static Object invoke(final Method method, final Object target, final Object... args) {
+    try {
+      return method.invoke(target, args);
+    } catch (Exception e) {
+      throw new IllegalStateException("JFR event failed", e);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package se.prolore.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The keywords and operators of a language in one open addressing hash table, so the
+// category of a token is found with one hash and one compare instead of a compare with
+// every word. Made once per language, when its FileType class is loaded.
+public class KeywordTable {
+  private static final int TABLE_SIZE = 64;   // must be a power of two, at least twice the words
+
+  private final char[][] tableWords = new char[TABLE_SIZE][];
+  private final int[] tableCategories = new int[TABLE_SIZE];
+  private int nrOfWords = 0;
+  private int longestWord = 0;                // longer tokens are not looked up at all
+  // The words in the order they were added, by category
+  private final List<List<String>> lists = new ArrayList<List<String>>();
+  private final List<Integer> listCategories = new ArrayList<Integer>();
+
+  // Add words of a category (see FileType)
+  KeywordTable add(final int category, final String... words) {
+    List<String> list = new ArrayList<String>();
+    for (String word : words) {
+      if (2 * (nrOfWords + 1) > TABLE_SIZE) {
+        throw new IllegalStateException("Too many words for the table: " + word);
+      }
+      int slot = hash(word, 0, word.length()) & (TABLE_SIZE - 1);
+      while (tableWords[slot] != null) {
+        slot = (slot + 1) & (TABLE_SIZE - 1);
+      }
+      tableWords[slot] = word.toCharArray();
+      tableCategories[slot] = category;
+      nrOfWords++;
+      longestWord = Math.max(longestWord, word.length());
+      list.add(word);
+    }
+    lists.add(list);
+    listCategories.add(category);
+    return this;
+  }
+
+  // The category of the text between start and end in the line, FileType.NONE if it is
+  // not one of the words
+  public int category(final CharSequence line, final int start, final int end) {
+    int length = end - start;
+    if (length > longestWord) {
+      return FileType.NONE;
+    }
+    for (int slot = hash(line, start, end) & (TABLE_SIZE - 1); tableWords[slot] != null;
+        slot = (slot + 1) & (TABLE_SIZE - 1)) {
+      char[] word = tableWords[slot];
+      if (word.length == length && regionMatches(line, start, word)) {
+        return tableCategories[slot];
+      }
+    }
+    return FileType.NONE;
+  }
+
+  // The words of a category
+  public List<String> getWords(final int category) {
+    List<String> words = new ArrayList<String>();
+    for (int i = 0; i < lists.size(); i++) {
+      if (listCategories.get(i) == category) {
+        words.addAll(lists.get(i));
+      }
+    }
+    return words;
+  }
+
+  // The lists of words in the order they were added, e.g. "[if, else][for, while]"
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    for (List<String> list : lists) {
+      text.append(list);
+    }
+    return text.toString();
+  }
+
+  private static int hash(final CharSequence text, final int start, final int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + text.charAt(i);
+    }
+    return h ^ (h >>> 7);
+  }
+
+  private static boolean regionMatches(final CharSequence line, final int offset, final char[] text) {
+    for (int i = 0; i < text.length; i++) {
+      if (line.charAt(offset + i) != text[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,25 @@
+package se.prolore.metrics;
+
+// Splits the lines of a file into tokens, for one language (see FileType.newLexer()).
+// A lexer keeps its state from one line to the next, so a comment or a literal that
+// spans several lines is known to be one.
+//
+// Usage: call reset() at the start of a file, then setLine() for each line and next()
+// until it returns END.
+public interface Lexer {
+  // Token types
+  int END = 0, IDENTIFIER = 1, OPERATOR = 2, LITERAL = 3, COMMENT = 4;
+
+  // Forget the state of the previous lines
+  void reset();
+
+  // Start on the next line, the state of the previous line is kept
+  void setLine(CharSequence line);
+
+  // Find the next token of the line, returns its type or END at the end of the line
+  int next();
+
+  int getTokenStart();
+
+  int getTokenEnd();
+}
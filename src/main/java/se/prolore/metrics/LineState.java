@@ -0,0 +1,76 @@
+package se.prolore.metrics;
+
+// Looks at the lines of a file one after the other and keeps the state of the lexer from
+// each line to the next, so a line inside a block comment, a Javadoc comment or a text block
+// is known to be one, and a brace inside a comment or a literal is not taken for a block.
+// Tells for the last line where its code starts and ends, without the comments around it,
+// and gives its tokens to a TokenListener.
+//
+// Usage: call reset() at the start of a file, then scan() for each line in order.
+public class LineState {
+  // Is given the tokens of each line that are not comments, see MethodDetector
+  public interface TokenListener {
+    void token(int type, CharSequence line, int start, int end);
+  }
+
+  private final Lexer lexer;
+  private TokenListener listener = null;
+  private int firstToken = Lexer.END;  // type of the first token that is not a comment
+  private int codeStart = 0;
+  private int codeEnd = 0;
+
+  LineState(final Lexer lexer) {
+    this.lexer = lexer;
+  }
+
+  // Give the tokens to listener too, or to no one if it is null
+  public void setListener(final TokenListener listener) {
+    this.listener = listener;
+  }
+
+  // Start on a new file, outside of any comment or literal
+  public void reset() {
+    lexer.reset();
+    firstToken = Lexer.END;
+    codeStart = codeEnd = 0;
+  }
+
+  // Look at the next line of the file
+  public void scan(final CharSequence line) {
+    firstToken = Lexer.END;
+    codeStart = codeEnd = 0;
+    lexer.setLine(line);
+    for (int token = lexer.next(); token != Lexer.END; token = lexer.next()) {
+      if (token == Lexer.COMMENT) {
+        continue;
+      }
+      if (firstToken == Lexer.END) {
+        firstToken = token;
+        codeStart = lexer.getTokenStart();
+      }
+      codeEnd = lexer.getTokenEnd();
+      if (listener != null) {
+        listener.token(token, line, lexer.getTokenStart(), codeEnd);
+      }
+    }
+  }
+
+  // False if the line is empty or only has comments
+  public boolean hasCode() {
+    return firstToken != Lexer.END;
+  }
+
+  // The type of the first token of the line that is not a comment, Lexer.END if there is none.
+  // A line that goes on with a text block starts with a LITERAL.
+  public int getFirstToken() {
+    return firstToken;
+  }
+
+  public int getCodeStart() {
+    return codeStart;
+  }
+
+  public int getCodeEnd() {
+    return codeEnd;
+  }
+}
@@ -1,9 +1,5 @@
 package se.prolore.metrics;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.util.List;
-
 public class Method {
   // McCabe proposed a way to measuring flow complexity of a method which basically counts
   // one for each place where the flow changes from a linear flow.
@@ -24,22 +20,21 @@ public class Method {
   private String methodName = "";
   private int lineNr = 0;
   private int lastLineNr = 0;
+  // The method this one is declared in, by an anonymous or local class, null if none
+  private Method parent = null;
   
   // Cyclomatic Complexity
   private int CC = 0;
-  private JavaFileType filetype;
-
 
   // Constructor
   Method(final String name) {
     methodName = name;
   }
 
-  Method(final int firstLine, final int lastLine, final String name, final JavaFileType fileType) {
+  Method(final int firstLine, final int lastLine, final String name) {
     lineNr = firstLine;
     lastLineNr = lastLine;
     methodName = name;
-	this.filetype = fileType;
   }
 
   public void setMethodName(final String name) {
@@ -62,6 +57,10 @@ public class Method {
       return lastLineNr;
   }
 
+  public void setLastLineNr(final int nr) {
+    lastLineNr = nr;
+  }
+
   public void setComplexity(final int complexity) {
     CC = complexity;
   }
@@ -69,158 +68,51 @@ public class Method {
   public int getComplexity() {
     return CC;
   }
-  
-  // Start with a count of one for the method.
-  // Add one for each of the following flow-related elements that are found in the method.
-
-  // Methods    Each return that isn't the last statement of a method.
-
-  // Selection  if, else, case, default.
-  // Loops      for, while, do-while, break, and continue.
-  // Operators  &&, ||, ?, and :
-  // Exceptions try, catch, finally, throw, or throws clause.
-  // Threads    start() call on a thread. Of course, this is a ridiculous underestimate!
-  public int calculateMethodComplexity(final BufferedReader bReader, final int firstLine, final int lastLine) throws IOException {
-    int complexity = 1;
-    String currentLine = "";
-
-    // Read each line of this Method
-    for (int i = firstLine; i < lastLine; i++) {
-      currentLine = bReader.readLine();
-
-      currentLine = currentLine.trim(); // Trim leading and trailing whitespace
-
-      // Ignore: This is an Empty Line (no visible characters)
-      if (currentLine.length() == 0) {
-        // Do nothing, empty line
-      }
-      // Ignore: This is a Trivial Line ( ´{´ or ´}´)
-      else if (filetype.lineIsTrivial(currentLine)) {
-	// Do nothing, trivial line
-      }
-      // Ignore: This is a Line of Comments (single line of comment)
-      else if (filetype.isLineComment(currentLine)) {
-	// Do nothing, comment line
-      }
-      else {
-        currentLine = trimComments(currentLine); // Trim tailing comments
-
-        complexity = complexity + countSelection(currentLine);
-        complexity = complexity + countLoops(currentLine);
-        complexity = complexity + countOperators(currentLine);
-        complexity = complexity + countExceptions(currentLine);
-        complexity = complexity + countThreads(currentLine);
-      }
-    }
-
-    return complexity;
-  }	 
-  
-  // Selection if, else, case, default.
-  private int countSelection(final String currentLine) {
-    int count = 0;
-    List<String> selectionKeyWords = filetype.getSelectionKeyWords();
-    for (String keyword : selectionKeyWords) {
-		count = count + countOccurences(currentLine, keyword);
-	}
-    return count;
-  }
 
-  // Loops for, while, do-while, break, and continue.
-  private int countLoops(final String currentLine) {
-    int count = 0;
-    
-    List<String> loopKeyWords = filetype.getLoopKeyWords();
-    for (String keyword : loopKeyWords) {
-		count = count + countOccurences(currentLine, keyword);
-	}
-    return count;
+  void addComplexity(final int complexity) {
+    CC = CC + complexity;
   }
 
-  // Operators &&, ||, ?, and :
-  private int countOperators(final String currentLine) {
-    int count = 0;
-    List<String> operators = filetype.getOperators();
-    for (String operator : operators) {
-		count = count + countOccurences(currentLine, operator);
-	}
-    return count;
+  public Method getParent() {
+    return parent;
   }
 
-  // Exceptions try, catch, finally, throw, or throws clause.
-  private int countExceptions(final String currentLine) {
-    int count = 0;
-
-    List<String> exceptions = filetype.getExceptions();
-    for (String keyword : exceptions) {
-		count =  count + countOccurences(currentLine, keyword);
-	}
-    return count;
+  void setParent(final Method parent) {
+    this.parent = parent;
   }
 
-  // Threads start() call on a thread. Of course, this is a ridiculous underestimate!
-  private int countThreads(final String currentLine) {
-    int count = 0;
-
-    // TODO: Implement later
-    return count;
-  }	  
-  
-  private int countOccurences(final String currentLine, final String findStr) {
-	    int count = 0;
-	    int lastIndex = 0;
-
-	    while (lastIndex != -1) {
-	      lastIndex = currentLine.indexOf(findStr, lastIndex);
-
-	      if (lastIndex != -1) {
-	        // Make sure the position not is within quotation marks
-	        if (!inQuotation(currentLine, lastIndex)) {
-	          count++;
-	        }
-	        lastIndex += findStr.length();
-	      }
-	    }
-	    return count;
-	  }
-  
-  // Check if the position is within quotation marks
-  private boolean inQuotation(final String strLine, final int pos) {
-    int quotes = 0;
-    // Count the number of quotation marks to the left of this position
-    for (int i = pos; 0 <= i; i--) {
-      if (strLine.charAt(i) == '"') {
-        quotes++;
-      }
-    }
-
-    // If the number is uneven, we within quotation
-    if (quotes % 2 == 1) {
-      return true;
+  // 0 for a method of a class, 1 for a method declared in it and so on
+  public int getDepth() {
+    int depth = 0;
+    for (Method outer = parent; outer != null; outer = outer.parent) {
+      depth++;
     }
-    return false;
+    return depth;
   }
   
-  // Remove tailing comment if there is any
-  private String trimComments(final String strLine) {
-
-    int index = strLine.indexOf(filetype.getLineComment());
-
-    // No comments in this line, return the line
-    if (index == -1) { // We have to ignore "//" (not a comment)
-      return strLine;
-    }
+  // Start with a count of one for the method.
+  // Add one for each of the following flow-related elements that are found in the method.
 
-    while (inQuotation(strLine, index) && index != -1) {
-      // System.out.println(index + strLine);
-      index = strLine.indexOf(filetype.getLineComment(), index + 2);
-    }
+  // Methods    Each return that isn't the last statement of a method.
 
-    if (index == -1) {
-      // No comments
-      return strLine;
+  // Selection  if, else, case, default.
+  // Loops      for, while, do-while, break, and continue.
+  // Operators  &&, ||, ?, and :
+  // Exceptions try, catch, finally, throw, or throws clause.
+  // Threads    start() call on a thread. Of course, this is a ridiculous underestimate!
+  //
+  // MethodDetector gives each token of the method to addsComplexity(), so keywords only count
+  // as whole words ("if" is not found in "modifier") and nothing inside comments, strings or
+  // char literals is counted. Thread starts are not counted yet.
+  //
+  // Does the token between start and end in the line, of the category (see FileType), add one
+  // to the complexity? typeArgument is true if the token before it was < or , then a ? is a
+  // wildcard, as in List<?>, not a conditional.
+  static boolean addsComplexity(final int category, final CharSequence line, final int start, final int end,
+      final boolean typeArgument) {
+    if (category == FileType.NONE || category == FileType.DECLARATION) {
+      return false;
     }
-    // End of line comment
-    return strLine.substring(0, index);
-  }	 
+    return !(typeArgument && end - start == 1 && line.charAt(start) == '?');
+  }
 }
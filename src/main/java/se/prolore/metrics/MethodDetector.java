@@ -0,0 +1,311 @@
+package se.prolore.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Finds the methods of a file in its tokens, as LineState gives them, and calculates their
+// complexity on the way. Each token is looked at once, so a file takes linear time.
+//
+// Parentheses and braces are kept on one stack, a brace as the kind of block it opens:
+// - DECLARATION, the body of a class, interface, enum, namespace or anonymous class, and the
+//   file itself. Only here "name(...) {" starts a method, so a call or a control statement is
+//   never taken for one, and a declaration without a body, as "void run();" in an interface,
+//   is not a method.
+// - CONSTANTS, the body of an enum up to its first ';', where "NAME(...) {" is a constant with a
+//   body, a DECLARATION, and not a method. After the ';' the body is a DECLARATION.
+// - METHOD, the body of a method. A token in it adds to the complexity of the method, also in
+//   a lambda or another block inside it, but not in a class declared in it. The methods of
+//   that class are methods of their own, with the method as parent, so the methods of a file
+//   form a tree. Only methods are nodes of the tree: a class, nested, local or anonymous, is
+//   not reported, its methods have the method around it as parent, or none if there is none.
+// - BLOCK, any other block: if, for, a lambda, an array initializer, a static initializer.
+//
+// A closing brace closes whatever is still open inside its block, and the end of the file
+// closes the rest, so a missing parenthesis or brace can't hide the methods after it.
+// Lines of the preprocessor, that start with '#', are skipped.
+//
+// Usage: give it to LineState.setListener(), call endOfLine() after each line is scanned and
+// endOfFile() at the end.
+public class MethodDetector implements LineState.TokenListener {
+  // What is open on the stack
+  private static final int PAREN = 0, NEW_PAREN = 1, DECLARATION = 2, METHOD = 3, BLOCK = 4, CONSTANTS = 5;
+  // What the token before was
+  private static final int OTHER = 0, NAME = 1, AT = 2, ANNOTATION = 3, TYPE_KEYWORD = 4, TYPE_NAME = 5,
+      ARROW = 6, CLOSE = 7, CLOSE_NEW = 8;
+
+  private final FileType filetype;
+  private final LineState lineState;
+  private final List<Method> methods;
+
+  // The stack, the file is at 0
+  private int[] kinds = new int[16];
+  private Method[] owners = new Method[16];  // the method a token here adds to, if any
+  private Method[] outers = new Method[16];  // the innermost method around, also outside a class in it
+  private int top = 0;
+
+  private int lineNr = 1;
+  private boolean lineStart = true;
+  private boolean preprocessor = false;      // the line is for the preprocessor
+  private int previous = OTHER;
+  private boolean afterNew = false;          // the tokens since "new" may be the name of a type
+  private boolean typeArgument = false;      // the token before was < or ,
+  private int typeArguments = 0;             // depth of the < > after a name, as in C# "F<T>("
+
+  // The declaration or statement since the last ';', '{' or '}' of the block at the top
+  private boolean hasName = false;           // has "name(", the name is on nameLine from nameStart
+  private boolean hasType = false;           // has "class Name" or the like
+  private boolean hasEnum = false;           // has "enum"
+  private boolean hasAssign = false;         // has '='
+  private boolean hasWords = false;          // has a word other than "static"
+  private int complexity = 0;
+  private int nameLine = 0;
+  private int nameStart = 0;
+  private String name = null;
+  private int lineStartOfDeclaration = -1;   // where its first token of this line is, -1 if none yet
+
+  // The methods found are added to methods, each after the one it is declared in
+  MethodDetector(final FileType filetype, final LineState lineState, final List<Method> methods) {
+    this.filetype = filetype;
+    this.lineState = lineState;
+    this.methods = methods;
+    kinds[0] = DECLARATION;
+  }
+
+  public void token(final int type, final CharSequence line, final int start, final int end) {
+    if (lineStart) {
+      lineStart = false;
+      preprocessor = type == Lexer.OPERATOR && line.charAt(start) == '#';
+    }
+    if (preprocessor) {
+      return;
+    }
+    boolean inBlock = kinds[top] != PAREN && kinds[top] != NEW_PAREN;
+    if (inBlock && lineStartOfDeclaration < 0) {
+      lineStartOfDeclaration = start;
+    }
+
+    int category = FileType.NONE;
+    if (type == Lexer.IDENTIFIER || type == Lexer.OPERATOR) {
+      category = filetype.category(line, start, end);
+      if (Method.addsComplexity(category, line, start, end, typeArgument)) {
+        if (owners[top] != null) {
+          owners[top].addComplexity(1);
+        } else {
+          complexity++;  // it counts if the declaration is a method
+        }
+      }
+    }
+    typeArgument = type == Lexer.OPERATOR && end - start == 1
+        && (line.charAt(start) == '<' || line.charAt(start) == ',');
+
+    if (type == Lexer.IDENTIFIER) {
+      identifier(category, line, start, end, inBlock);
+    } else if (type == Lexer.OPERATOR) {
+      operator(line, start, end, inBlock);
+    } else {
+      previous = OTHER;
+      afterNew = false;
+    }
+  }
+
+  private void identifier(final int category, final CharSequence line, final int start, final int end,
+      final boolean inBlock) {
+    if (inBlock && !equals(line, start, end, "static")) {
+      hasWords = true;
+    }
+    if (previous == AT) {
+      previous = ANNOTATION;
+    } else if (category == FileType.DECLARATION) {
+      hasEnum = hasEnum || (inBlock && equals(line, start, end, "enum"));
+      previous = TYPE_KEYWORD;
+      afterNew = false;
+    } else if (previous == TYPE_KEYWORD) {
+      hasType = hasType || inBlock;
+      previous = TYPE_NAME;
+    } else if (equals(line, start, end, "new")) {
+      previous = OTHER;
+      afterNew = true;
+    } else {
+      previous = category == FileType.NONE ? NAME : OTHER;
+    }
+  }
+
+  private void operator(final CharSequence line, final int start, final int end, final boolean inBlock) {
+    char c = line.charAt(start);
+    if (end - start == 2) {
+      // A lambda, -> in Java and => in C#
+      previous = line.charAt(start + 1) == '>' && (c == '-' || c == '=') ? ARROW : OTHER;
+      afterNew = afterNew && c == ':';
+      return;
+    }
+    switch (c) {
+    case '(':
+      // A record is "record Name(...)", else the name before the first ( is the name of a method
+      if (inBlock && previous == NAME && !hasName) {
+        hasName = true;
+        nameLine = lineNr;
+        nameStart = lineStartOfDeclaration;
+        name = null;
+      }
+      push(afterNew ? NEW_PAREN : PAREN, owners[top], outers[top]);
+      previous = OTHER;
+      afterNew = false;
+      break;
+    case ')':
+      previous = CLOSE;
+      if (kinds[top] == NEW_PAREN) {
+        previous = CLOSE_NEW;
+      }
+      if (!inBlock) {
+        pop();
+      }
+      afterNew = false;
+      break;
+    case '{':
+      openBlock(line, end, inBlock);
+      break;
+    case '}':
+      // Close what is still open inside the block, then the block
+      while (kinds[top] == PAREN || kinds[top] == NEW_PAREN) {
+        pop();
+      }
+      if (top > 0) {
+        pop();
+      }
+      endOfDeclaration();
+      break;
+    case ';':
+      previous = OTHER;
+      afterNew = false;
+      if (kinds[top] == CONSTANTS) {
+        kinds[top] = DECLARATION;
+      }
+      if (inBlock) {
+        endOfDeclaration();
+      }
+      break;
+    case '@':
+      previous = AT;
+      break;
+    case '.':
+      // A part of a qualified name, of an annotation or of a type after new
+      previous = previous == ANNOTATION ? AT : OTHER;
+      break;
+    case '=':
+      hasAssign = hasAssign || inBlock;
+      previous = OTHER;
+      afterNew = false;
+      break;
+    case '<':
+      if (previous == NAME || typeArguments > 0) {
+        typeArguments++;
+      }
+      previous = OTHER;
+      break;
+    case '>':
+      // The type arguments are a part of the name
+      previous = OTHER;
+      if (typeArguments > 0) {
+        typeArguments--;
+        previous = typeArguments == 0 ? NAME : OTHER;
+      }
+      break;
+    case ',': case '?': case '[': case ']':
+      // May be in the type after new
+      previous = OTHER;
+      break;
+    default:
+      previous = OTHER;
+      afterNew = false;
+    }
+  }
+
+  // A { opens a method, a declaration or another block
+  private void openBlock(final CharSequence line, final int end, final boolean inBlock) {
+    if (previous == CLOSE_NEW) {
+      push(DECLARATION, null, outers[top]);   // an anonymous class, also as an argument
+    } else if (previous == ARROW || !inBlock) {
+      push(BLOCK, owners[top], outers[top]);
+    } else if (kinds[top] == CONSTANTS) {
+      push(DECLARATION, null, outers[top]);   // the body of an enum constant
+    } else if (kinds[top] == DECLARATION && hasName && !hasAssign
+        && (previous == CLOSE || previous == NAME || previous == TYPE_KEYWORD)) {
+      if (name == null) {
+        name = line.subSequence(nameStart, end).toString();
+      }
+      Method method = new Method(nameLine, nameLine, name);
+      method.setParent(outers[top]);
+      method.setComplexity(1 + complexity);
+      methods.add(method);
+      push(METHOD, method, method);
+    } else if (!hasAssign && (hasType || (kinds[top] == DECLARATION && hasWords))) {
+      push(hasEnum ? CONSTANTS : DECLARATION, null, outers[top]);   // a class, an enum, a namespace...
+    } else {
+      push(BLOCK, owners[top], outers[top]);
+    }
+    endOfDeclaration();
+  }
+
+  private void endOfDeclaration() {
+    hasName = hasType = hasEnum = hasAssign = hasWords = false;
+    complexity = 0;
+    name = null;
+    lineStartOfDeclaration = -1;
+    previous = OTHER;
+    afterNew = false;
+    typeArguments = 0;
+  }
+
+  // Call after each line, also one without tokens
+  public void endOfLine(final CharSequence line) {
+    if (preprocessor) {
+      endOfDeclaration();
+    } else if (hasName && name == null && nameLine == lineNr) {
+      // The declaration of a method goes on, its name is the line from the declaration on
+      name = line.subSequence(nameStart, lineState.getCodeEnd()).toString();
+    }
+    lineNr++;
+    lineStart = true;
+    preprocessor = false;
+    lineStartOfDeclaration = -1;
+  }
+
+  // A method that is still open ends at the last line
+  public void endOfFile() {
+    while (top > 0) {
+      pop();
+    }
+  }
+
+  private void push(final int kind, final Method owner, final Method outer) {
+    if (top + 1 == kinds.length) {
+      kinds = Arrays.copyOf(kinds, 2 * kinds.length);
+      owners = Arrays.copyOf(owners, 2 * owners.length);
+      outers = Arrays.copyOf(outers, 2 * outers.length);
+    }
+    top++;
+    kinds[top] = kind;
+    owners[top] = owner;
+    outers[top] = outer;
+  }
+
+  private void pop() {
+    if (kinds[top] == METHOD) {
+      owners[top].setLastLineNr(lineStart ? lineNr - 1 : lineNr);
+    }
+    owners[top] = outers[top] = null;
+    top--;
+  }
+
+  private static boolean equals(final CharSequence line, final int start, final int end, final String word) {
+    if (end - start != word.length()) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (line.charAt(start + i) != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,85 @@
+package se.prolore.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+// The methods of each file as a .csv file, one row per method, written as the files are done.
+// A method declared inside another one, in an anonymous or local class, has the first line
+// of that method as its enclosing method, so the rows of a file can be read as a tree.
+// The path and the signature are quoted as in CsvReport, a signature may have a ';' in it.
+public class MethodReport implements ReportSink {
+  private static final String NEWLINE = System.getProperty("line.separator");
+
+  private BufferedWriter out = null;
+
+  MethodReport(final File file) {
+    try {
+      out = new BufferedWriter(new FileWriter(file));
+      out.write("File Name;");
+      out.write("Method;");
+      out.write("First Line;");
+      out.write("Last Line;");
+      out.write("Complexity;");
+      out.write("Enclosing Method Line;");
+      out.write(NEWLINE);
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // The declaration of a method without the brace that opens its body
+  static String signature(final Method method) {
+    String signature = method.getMethodName().trim();
+    if (signature.endsWith("{")) {
+      signature = signature.substring(0, signature.length() - 1).trim();
+    }
+    return signature;
+  }
+
+  public void file(final ComplexityParser file) {
+    if (out == null) {
+      return;
+    }
+    try {
+      String path = CsvReport.field(file.getSourceFile().getAbsolutePath());
+      for (int i = 0; i < file.getNrOfMethods(); i++) {
+        Method method = file.getMethod(i);
+        out.write(path + ";");
+        out.write(CsvReport.field(signature(method)) + ";");
+        out.write(String.valueOf(method.getLineNr()) + ";");
+        out.write(String.valueOf(method.getLastLineNr()) + ";");
+        out.write(String.valueOf(method.getComplexity()) + ";");
+        if (method.getParent() != null) {
+          out.write(String.valueOf(method.getParent().getLineNr()));
+        }
+        out.write(";");
+        out.write(NEWLINE);
+      }
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // A deleted file has no methods left
+  public void deletedFile(final ComplexityParser deletedFile) {
+  }
+
+  public void close(final ReportTotals totals) {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // Report the error once and write no more
+  private void failed(final IOException e) {
+    System.err.println("Error: " + e.getMessage());
+    out = null;
+  }
+}
@@ -0,0 +1,200 @@
+package se.prolore.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+// Answers requests for metrics over HTTP on the loopback interface, so hooks and editors
+// do not pay for a new JVM and a cold JIT on every run. The workers, the cache and the
+// rules stay loaded between requests.
+//
+//   POST /analyze  One path per line, a source file or a directory
+//   POST /churn    One pair per line, old and new path separated by a tab, two source files
+//                  or two directories
+//   POST /stop     Stop the server
+//
+// The answer is JSON: the files as in the -ndjson report, the deleted files, the totals and
+// the milliseconds the request took. Requests are answered one at a time, each one uses
+// all workers. If a file can't be read during a request, the answer is 500 with the error.
+public class MetricsServer {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final HttpServer server;
+  private final WorkerPool workers;
+  private final AnalysisCache cache;
+  private final String diffAlgorithm;
+  private final CountDownLatch stopped = new CountDownLatch(1);
+
+  // Port 0 means any free port, see getPort
+  MetricsServer(final int port, final WorkerPool workers, final AnalysisCache cache, final String diffAlgorithm)
+      throws IOException {
+    this.workers = workers;
+    this.cache = cache;
+    this.diffAlgorithm = diffAlgorithm;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/analyze", new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        answer(exchange, false);
+      }
+    });
+    server.createContext("/churn", new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        answer(exchange, true);
+      }
+    });
+    server.createContext("/stop", new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+          send(exchange, 405, error("Use POST"));
+          return;
+        }
+        send(exchange, 200, "{\"stopped\": true}");
+        stopped.countDown();
+      }
+    });
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  // Wait for a request to /stop, then stop the server
+  public void awaitStop() {
+    try {
+      stopped.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    server.stop(0);
+  }
+
+  private void answer(final HttpExchange exchange, final boolean codeChurn) throws IOException {
+    long start = System.nanoTime();
+    if (!exchange.getRequestMethod().equals("POST")) {
+      send(exchange, 405, error("Use POST"));
+      return;
+    }
+
+    // Check all paths before any work is done
+    List<File[]> paths = new ArrayList<File[]>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), UTF_8));
+    for (String line = in.readLine(); line != null; line = in.readLine()) {
+      if (line.trim().length() == 0) {
+        continue;
+      }
+      String[] names = codeChurn ? line.split("\t") : new String[] { line };
+      File[] files = new File[names.length];
+      for (int i = 0; i < names.length; i++) {
+        files[i] = new File(names[i].trim());
+      }
+      if (codeChurn ? !isPair(files) : !isSource(files[0])) {
+        String expected = codeChurn ? "two source files or two directories" : "a source file or directory";
+        send(exchange, 400, error("Not " + expected + ": " + line));
+        return;
+      }
+      paths.add(files);
+    }
+
+    JsonResponse response = new JsonResponse(codeChurn);
+    List<ReportSink> sinks = new ArrayList<ReportSink>();
+    sinks.add(response);
+    StreamingReport report = new StreamingReport(sinks);
+    int nr = 0;
+    try {
+      for (File[] files : paths) {
+        CodeMetrics run = new CodeMetrics(workers, cache, diffAlgorithm);
+        if (codeChurn) {
+          run.churnPaths(files[0], files[1]);
+        }
+        else {
+          run.analyzePath(files[0]);
+        }
+        nr = run.reportFiles(report, nr);
+      }
+      report.close();
+    } catch (RuntimeException e) {
+      // A file that was deleted or can't be read during the request fails the request, not the server
+      send(exchange, 500, error(e.getMessage() != null ? e.getMessage() : e.toString()));
+      return;
+    }
+    send(exchange, 200, response.toJson(System.nanoTime() - start));
+  }
+
+  private static boolean isSource(final File path) {
+    return path.isDirectory() || SourceFiles.isSourceFile(path);
+  }
+
+  private static boolean isPair(final File[] paths) {
+    return paths.length == 2 && ((paths[0].isDirectory() && paths[1].isDirectory())
+        || (SourceFiles.isSourceFile(paths[0]) && SourceFiles.isSourceFile(paths[1])));
+  }
+
+  private static String error(final String message) {
+    return "{\"error\": " + RunStats.quote(message) + "}";
+  }
+
+  private static void send(final HttpExchange exchange, final int status, final String json) throws IOException {
+    byte[] body = (json + "\n").getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(body);
+    out.close();
+  }
+
+  // Collects the report of a request as one JSON object
+  private static class JsonResponse implements ReportSink {
+    private final boolean codeChurn;
+    private final StringBuilder files = new StringBuilder();
+    private final StringBuilder deletedFiles = new StringBuilder();
+    private final StringBuilder totals = new StringBuilder();
+
+    JsonResponse(final boolean codeChurn) {
+      this.codeChurn = codeChurn;
+    }
+
+    public void file(final ComplexityParser file) {
+      files.append(files.length() == 0 ? "\n    {" : ",\n    {");
+      NdjsonReport.appendFile(files, file, codeChurn);
+      files.append('}');
+    }
+
+    public void deletedFile(final ComplexityParser deletedFile) {
+      deletedFiles.append(deletedFiles.length() == 0 ? "\n    {" : ",\n    {");
+      NdjsonReport.appendDeletedFile(deletedFiles, deletedFile);
+      deletedFiles.append('}');
+    }
+
+    public void close(final ReportTotals reportTotals) {
+      NdjsonReport.appendTotals(totals, reportTotals, codeChurn);
+    }
+
+    // The whole answer, for a request that took nanos
+    String toJson(final long nanos) {
+      StringBuilder json = new StringBuilder(files.length() + deletedFiles.length() + 256);
+      json.append("{\n  \"millis\": ").append(nanos / 1000 / 1000.0).append(",\n");
+      json.append("  \"files\": [").append(files).append("\n  ],\n");
+      if (codeChurn) {
+        json.append("  \"deletedFiles\": [").append(deletedFiles).append("\n  ],\n");
+      }
+      json.append("  \"total\": {").append(totals).append("}\n");
+      return json.append('}').toString();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Modules (components) defined as path prefixes, e.g. "core=src/core;src/util gui=src/gui".
+// A path is relative to the directory that is analysed, or absolute. A file belongs to the
+// module with the longest prefix of its path, or to OTHER if none. The prefixes are kept in
+// a trie of path names. The trie is walked once for each directory, the place reached is
+// kept, so each file in the directory only takes one more step, for its own name.
+public class Modules {
+  static final String OTHER = "(no module)";
+
+  // A directory in the trie, with the module of the prefix that ends here if there is one
+  private static class Node {
+    final Map<String, Node> children = new HashMap<String, Node>();
+    String module = null;
+  }
+
+  // Where the walk of a path in the trie ended: the node of the path, null if the path
+  // leaves the trie, and the module of the longest prefix on the way
+  private static class Position {
+    final Node node;
+    final String module;
+
+    Position(final Node node, final String module) {
+      this.node = node;
+      this.module = module;
+    }
+  }
+
+  // A directory of files: its position below the root, null if it is not below it, and
+  // its position as an absolute path
+  private static class Directory {
+    final Position relative;
+    final Position absolute;
+
+    Directory(final Position relative, final Position absolute) {
+      this.relative = relative;
+      this.absolute = absolute;
+    }
+  }
+
+  private final Node trie = new Node();
+  private final List<String> names = new ArrayList<String>();
+  // By root and directory, the files are found from any thread
+  private final Map<String, Directory> directories = new ConcurrentHashMap<String, Directory>();
+
+  // Add the definitions separated by spaces, each one NAME=PATH1;PATH2.
+  // Throws IllegalArgumentException for a definition without a name or a path.
+  public void define(final String definitions) {
+    directories.clear();
+    for (String definition : definitions.trim().split("\\s+")) {
+      int equals = definition.indexOf('=');
+      if (equals <= 0 || equals == definition.length() - 1) {
+        throw new IllegalArgumentException("Not NAME=PATH1;PATH2: " + definition);
+      }
+      String name = definition.substring(0, equals);
+      if (!names.contains(name)) {
+        names.add(name);
+      }
+      for (String prefix : definition.substring(equals + 1).split(";")) {
+        if (prefix.length() > 0) {
+          add(new File(prefix).toPath().normalize(), name);
+        }
+      }
+    }
+  }
+
+  private void add(final Path prefix, final String name) {
+    Node node = trie;
+    for (String key : keys(prefix)) {
+      Node child = node.children.get(key);
+      if (child == null) {
+        child = new Node();
+        node.children.put(key, child);
+      }
+      node = child;
+    }
+    node.module = name;
+  }
+
+  // The names of the modules in the order they were defined, OTHER last
+  public List<String> getNames() {
+    List<String> all = new ArrayList<String>(names);
+    all.add(OTHER);
+    return all;
+  }
+
+  // The module of a file found below root
+  public String moduleOf(final File root, final File file) {
+    String parent = file.getParent();
+    String key = root.getPath() + File.pathSeparator + (parent != null ? parent : "");
+    Directory directory = directories.get(key);
+    if (directory == null) {
+      directory = directory(root.toPath().normalize(), parent != null ? new File(parent).toPath().normalize()
+          : root.toPath().getFileSystem().getPath(""));
+      directories.put(key, directory);
+    }
+    String name = file.getName();
+    String module = step(directory.relative, name);
+    if (module == null) {
+      module = step(directory.absolute, name);
+    }
+    return module != null ? module : OTHER;
+  }
+
+  private Directory directory(final Path base, final Path path) {
+    Position relative = path.startsWith(base) ? find(base.relativize(path)) : null;
+    return new Directory(relative, find(path.toAbsolutePath()));
+  }
+
+  // Walk the names of path down the trie
+  private Position find(final Path path) {
+    String module = trie.module;
+    Node node = trie;
+    for (String key : keys(path)) {
+      node = node.children.get(key);
+      if (node == null) {
+        break;
+      }
+      if (node.module != null) {
+        module = node.module;
+      }
+    }
+    return new Position(node, module);
+  }
+
+  // The module of a file named name in the directory at position, null if none
+  private static String step(final Position position, final String name) {
+    if (position == null) {
+      return null;
+    }
+    if (position.node != null) {
+      Node child = position.node.children.get(name);
+      if (child != null && child.module != null) {
+        return child.module;
+      }
+    }
+    return position.module;
+  }
+
+  // The names of a path, after its root if it has one, so absolute and relative prefixes
+  // can be in the same trie
+  private static List<String> keys(final Path path) {
+    List<String> keys = new ArrayList<String>(path.getNameCount() + 1);
+    if (path.getRoot() != null) {
+      keys.add(path.getRoot().toString());
+    }
+    for (Path name : path) {
+      if (name.toString().length() > 0) {
+        keys.add(name.toString());
+      }
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,145 @@
+package se.prolore.metrics;
+
+//////////////////////////////////////////////////////////////////////////////
+// Class: MyersDiff
+//
+// Eugene Myers' O(ND) difference algorithm (1986), in its linear space form.
+// Finds a longest common subsequence of the two files by splitting them at the
+// middle snake of the edit path, and then solving each half the same way.
+// This gives the same kind of result as "git diff" with the myers algorithm.
+// Moved blocks are seen as deleted and added lines.
+//////////////////////////////////////////////////////////////////////////////
+
+public class MyersDiff implements DiffAlgorithm {
+  int oldIds[], newIds[];
+  int oldOther[], newOther[];
+
+  // Furthest reaching x on each diagonal, forward and backward, indexed by k + offset
+  int forward[], backward[];
+
+  // The middle snake found by middleSnake, from (snakeX, snakeY) to (snakeU, snakeV)
+  int snakeX, snakeY, snakeU, snakeV;
+
+  public void match(int[] oldIds, int oldMax, int[] newIds, int newMax, int nrOfIds, int[] oldOther, int[] newOther) {
+    match(oldIds, 1, oldMax + 1, newIds, 1, newMax + 1, oldOther, newOther);
+  }
+
+  // Match the lines oldLo..oldHi-1 with the lines newLo..newHi-1.
+  // Used by HistogramDiff for the parts it can't split.
+  void match(int[] oldIds, int oldLo, int oldHi, int[] newIds, int newLo, int newHi, int[] oldOther, int[] newOther) {
+    this.oldIds = oldIds;
+    this.newIds = newIds;
+    this.oldOther = oldOther;
+    this.newOther = newOther;
+    int size = (oldHi - oldLo) + (newHi - newLo) + 4;
+    if (forward == null || forward.length < size) {
+      forward = new int[size];
+      backward = new int[size];
+    }
+
+    compare(oldLo, oldHi, newLo, newHi);
+
+    this.oldIds = this.newIds = this.oldOther = this.newOther = null;
+  }
+
+  // Match the common lines of oldIds[oldLo..oldHi-1] and newIds[newLo..newHi-1]
+  void compare(int oldLo, int oldHi, int newLo, int newHi) {
+    // Common lines at the front and at the end are always part of the result
+    while (oldLo < oldHi && newLo < newHi && oldIds[oldLo] == newIds[newLo]) {
+      record(oldLo++, newLo++);
+    }
+    while (oldLo < oldHi && newLo < newHi && oldIds[oldHi - 1] == newIds[newHi - 1]) {
+      record(--oldHi, --newHi);
+    }
+    if (oldLo == oldHi || newLo == newHi) {
+      return;   // only deleted or only added lines left
+    }
+
+    middleSnake(oldLo, oldHi, newLo, newHi);
+    int x = snakeX, y = snakeY, u = snakeU, v = snakeV;
+
+    compare(oldLo, x, newLo, y);
+    for (int i = x, j = y; i < u; i++, j++) {
+      record(i, j);
+    }
+    compare(u, oldHi, v, newHi);
+  }
+
+  // Find the middle snake of the edit path between the two parts, and leave it in snakeX..snakeV.
+  // Expects both parts non-empty and their first and last lines different.
+  void middleSnake(int oldLo, int oldHi, int newLo, int newHi) {
+    int n = oldHi - oldLo;
+    int m = newHi - newLo;
+    int delta = n - m;
+    boolean odd = (delta & 1) != 0;
+    int max = (n + m + 1) / 2;
+    int offset = max + 1;
+
+    forward[offset + 1] = 0;
+    backward[offset + 1] = 0;
+
+    for (int d = 0; d <= max; d++) {
+      // One more step forward from the start
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+          x = forward[offset + k + 1];        // down
+        }
+        else {
+          x = forward[offset + k - 1] + 1;    // right
+        }
+        int y = x - k;
+        int startX = x, startY = y;
+        while (x < n && y < m && oldIds[oldLo + x] == newIds[newLo + y]) {
+          x++;
+          y++;
+        }
+        forward[offset + k] = x;
+
+        int reverseK = delta - k;
+        if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+          setSnake(oldLo + startX, newLo + startY, oldLo + x, newLo + y);
+          return;
+        }
+      }
+
+      // One more step backward from the end, x counts from the end here
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+          x = backward[offset + k + 1];
+        }
+        else {
+          x = backward[offset + k - 1] + 1;
+        }
+        int y = x - k;
+        int startX = x, startY = y;
+        while (x < n && y < m && oldIds[oldHi - 1 - x] == newIds[newHi - 1 - y]) {
+          x++;
+          y++;
+        }
+        backward[offset + k] = x;
+
+        int forwardK = delta - k;
+        if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+          setSnake(oldHi - x, newHi - y, oldHi - startX, newHi - startY);
+          return;
+        }
+      }
+    }
+    // NOTE: The paths always meet, so control does not get here.
+    throw new IllegalStateException("No middle snake found");
+  }
+
+  private void setSnake(int x, int y, int u, int v) {
+    snakeX = x;
+    snakeY = y;
+    snakeU = u;
+    snakeV = v;
+  }
+
+  private void record(int oldline, int newline) {
+    oldOther[oldline] = newline;
+    newOther[newline] = oldline;
+  }
+}
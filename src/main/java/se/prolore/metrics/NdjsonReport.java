@@ -0,0 +1,114 @@
+package se.prolore.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+// The report as newline delimited JSON: one object per file as the files are done, one per
+// deleted file, and last one with the totals ("total": true).
+public class NdjsonReport implements ReportSink {
+  private BufferedWriter out = null;
+  private final boolean codeChurn;
+
+  // With the code churn fields if codeChurn is set
+  NdjsonReport(final File file, final boolean codeChurn) {
+    this.codeChurn = codeChurn;
+    try {
+      out = new BufferedWriter(new FileWriter(file));
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  public void file(final ComplexityParser file) {
+    StringBuilder line = new StringBuilder(256);
+    appendFile(line.append('{'), file, codeChurn);
+    write(line.append('}'));
+  }
+
+  public void deletedFile(final ComplexityParser deletedFile) {
+    StringBuilder line = new StringBuilder(128);
+    appendDeletedFile(line.append('{'), deletedFile);
+    write(line.append('}'));
+  }
+
+  public void close(final ReportTotals totals) {
+    StringBuilder line = new StringBuilder(256);
+    appendTotals(line.append("{\"total\": true, "), totals, codeChurn);
+    write(line.append('}'));
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        failed(e);
+      }
+    }
+  }
+
+  // The fields of a file, without the braces around them
+  static void appendFile(final StringBuilder line, final ComplexityParser file, final boolean codeChurn) {
+    line.append("\"file\": ").append(RunStats.quote(file.getSourceFile().getAbsolutePath()));
+    line.append(", \"linesOfCode\": ").append(file.getLinesOfCode());
+    line.append(", \"executableLines\": ").append(file.getLinesOfStatements());
+    line.append(", \"linesOfComments\": ").append(file.getLinesOfComments());
+    line.append(", \"trivialLines\": ").append(file.getTrivialLines());
+    line.append(", \"emptyLines\": ").append(file.getEmptyLines());
+    line.append(", \"complexity\": ").append(file.getComplexity());
+    line.append(", \"methods\": ").append(file.getNrOfMethods());
+    line.append(", \"averageMethodComplexity\": ").append(file.getAvgComplexity());
+    line.append(", \"commentPercentage\": ")
+        .append(ReportTotals.commentPercentage(file.getLinesOfComments(), file.getLinesOfCode()));
+    if (codeChurn) {
+      appendChurn(line, file.getAddedLines(), file.getChangedLines(), file.getDeletedLines(), file.getCodeChurn());
+    }
+  }
+
+  static void appendDeletedFile(final StringBuilder line, final ComplexityParser deletedFile) {
+    line.append("\"file\": ").append(RunStats.quote(deletedFile.getSourceFile().getAbsolutePath()));
+    line.append(", \"deleted\": true");
+    appendChurn(line, 0, 0, deletedFile.getDeletedLines(), deletedFile.getCodeChurn());
+  }
+
+  static void appendTotals(final StringBuilder line, final ReportTotals totals, final boolean codeChurn) {
+    line.append("\"linesOfCode\": ").append(totals.sumLinesOfCode());
+    line.append(", \"executableLines\": ").append(totals.sumLinesOfStatements());
+    line.append(", \"linesOfComments\": ").append(totals.sumLinesOfComments());
+    line.append(", \"trivialLines\": ").append(totals.sumTrivialLines());
+    line.append(", \"emptyLines\": ").append(totals.sumEmptyLines());
+    line.append(", \"complexity\": ").append(totals.sumComplexity());
+    line.append(", \"files\": ").append(totals.getNrOfFiles());
+    line.append(", \"averageFileComplexity\": ").append(totals.sumAvgComplexity());
+    line.append(", \"commentPercentage\": ")
+        .append(ReportTotals.commentPercentage(totals.sumLinesOfComments(), totals.sumLinesOfCode()));
+    if (codeChurn) {
+      appendChurn(line, totals.sumAddedLines(), totals.sumChangedLines(), totals.sumDeletedLines(), totals.sumCodeChurn());
+    }
+  }
+
+  private static void appendChurn(final StringBuilder line, final int added, final int changed, final int deleted,
+      final int churn) {
+    line.append(", \"addedLines\": ").append(added);
+    line.append(", \"changedLines\": ").append(changed);
+    line.append(", \"deletedLines\": ").append(deleted);
+    line.append(", \"codeChurn\": ").append(churn);
+  }
+
+  private void write(final CharSequence line) {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.append(line);
+      out.write('\n');
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  // Report the error once and write no more
+  private void failed(final IOException e) {
+    System.err.println("Error: " + e.getMessage());
+    out = null;
+  }
+}
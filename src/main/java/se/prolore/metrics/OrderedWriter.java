@@ -0,0 +1,48 @@
+package se.prolore.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes the texts of numbered parts in their order, from any thread. A part is written as soon
+// as all the parts before it are, so only the parts done before an earlier one are kept waiting.
+// The first error stops the writing, the parts are still taken so none of them is kept.
+public class OrderedWriter {
+  private final Writer out;
+  private final String[] waiting;   // the texts done before the part at next, by number
+  private int next = 0;
+  private IOException error = null;
+
+  public OrderedWriter(final Writer out, final int parts) {
+    this.out = out;
+    waiting = new String[parts];
+  }
+
+  // Part number part is done
+  public synchronized void write(final int part, final String text) {
+    waiting[part] = text;
+    while (next < waiting.length && waiting[next] != null) {
+      if (error == null) {
+        try {
+          out.write(waiting[next]);
+        } catch (IOException e) {
+          error = e;
+        }
+      }
+      waiting[next++] = null;
+    }
+  }
+
+  // Close the output, throws the first error if there was one
+  public synchronized void close() throws IOException {
+    try {
+      out.close();
+    } catch (IOException e) {
+      if (error == null) {
+        error = e;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+}
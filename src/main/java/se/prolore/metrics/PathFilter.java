@@ -0,0 +1,226 @@
+package se.prolore.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which files and directories a walk takes. The patterns are compiled once, when the
+// filter is made, and the .gitignore file of a directory is read once, the first time a
+// path below it is looked at.
+//
+// A pattern is a glob, or a regular expression after "regex:". A glob without a '/'
+// matches the name of a file or directory at any depth, e.g. "target" or "*Test.java".
+// Other patterns match the path relative to the root of the walk, e.g. "src/generated/**".
+//
+// An excluded directory is not walked at all. With include patterns, a source file
+// must match one of them. With .gitignore, the .gitignore files of the walked
+// directories are used as git does, the last matching line wins and a deeper file wins
+// over one above it. .gitignore files above the root of the walk are not read.
+public class PathFilter {
+  // Takes everything
+  static final PathFilter ALL = new PathFilter(Collections.<Rule>emptyList(), Collections.<Rule>emptyList(), false);
+
+  private static final String GITIGNORE = ".gitignore";
+  private static final List<Rule> NO_RULES = Collections.emptyList();
+
+  // A compiled pattern
+  private static class Rule {
+    final PathMatcher matcher;
+    final boolean nameOnly;       // match the name instead of the relative path
+    final boolean directoryOnly;  // only match directories
+    final boolean negated;        // a .gitignore line with '!', takes the path back
+
+    Rule(final PathMatcher matcher, final boolean nameOnly, final boolean directoryOnly, final boolean negated) {
+      this.matcher = matcher;
+      this.nameOnly = nameOnly;
+      this.directoryOnly = directoryOnly;
+      this.negated = negated;
+    }
+
+    // relative is the path relative to the directory of the rule
+    boolean matches(final Path relative, final boolean directory) {
+      if (directoryOnly && !directory) {
+        return false;
+      }
+      if (nameOnly) {
+        Path name = relative.getFileName();
+        return name != null && matcher.matches(name);
+      }
+      return matcher.matches(relative);
+    }
+  }
+
+  private final List<Rule> includes;
+  private final List<Rule> excludes;
+  private final boolean gitignore;
+  // The rules of the .gitignore file of each directory read so far
+  private final Map<Path, List<Rule>> gitignores = new ConcurrentHashMap<Path, List<Rule>>();
+
+  private PathFilter(final List<Rule> includes, final List<Rule> excludes, final boolean gitignore) {
+    this.includes = includes;
+    this.excludes = excludes;
+    this.gitignore = gitignore;
+  }
+
+  // A filter from lists of patterns separated by ';', either may be empty.
+  // Throws IllegalArgumentException for a pattern that can't be compiled.
+  static PathFilter compile(final List<String> includes, final List<String> excludes, final boolean gitignore) {
+    return new PathFilter(compile(includes), compile(excludes), gitignore);
+  }
+
+  private static List<Rule> compile(final List<String> patternLists) {
+    List<Rule> rules = new ArrayList<Rule>();
+    for (String patternList : patternLists) {
+      for (String pattern : patternList.split(";")) {
+        if (pattern.length() == 0) {
+          continue;
+        }
+        if (pattern.startsWith("regex:")) {
+          rules.add(new Rule(FileSystems.getDefault().getPathMatcher(pattern), false, false, false));
+        }
+        else {
+          String glob = pattern.startsWith("glob:") ? pattern.substring("glob:".length()) : pattern;
+          if (glob.endsWith("/")) {
+            glob = glob.substring(0, glob.length() - 1);
+          }
+          rules.add(new Rule(FileSystems.getDefault().getPathMatcher("glob:" + glob), glob.indexOf('/') < 0, false,
+              false));
+        }
+      }
+    }
+    return rules;
+  }
+
+  // True if the walk from root should not go into dir
+  public boolean skipDirectory(final Path root, final Path dir) {
+    Path relative = root.relativize(dir);
+    return matchesAny(excludes, relative, true) || ignored(root, dir, true);
+  }
+
+  // True if the walk from root should not take file
+  public boolean skipFile(final Path root, final Path file) {
+    Path relative = root.relativize(file);
+    if (!includes.isEmpty() && !matchesAny(includes, relative, false)) {
+      return true;
+    }
+    return matchesAny(excludes, relative, false) || ignored(root, file, false);
+  }
+
+  private static boolean matchesAny(final List<Rule> rules, final Path relative, final boolean directory) {
+    for (Rule rule : rules) {
+      if (rule.matches(relative, directory)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Ignored by the .gitignore files from root down to the directory of path
+  private boolean ignored(final Path root, final Path path, final boolean directory) {
+    if (!gitignore || path.equals(root)) {
+      return false;
+    }
+    Path parent = path.getParent();
+    Path dir = root;
+    boolean ignored = applyGitignore(dir, path, directory, false);
+    while (!dir.equals(parent)) {
+      dir = dir.resolve(parent.getName(dir.getNameCount()));
+      ignored = applyGitignore(dir, path, directory, ignored);
+    }
+    return ignored;
+  }
+
+  // The .gitignore file of dir decides if it has a line for path, else it stays ignored or not
+  private boolean applyGitignore(final Path dir, final Path path, final boolean directory, boolean ignored) {
+    Path relative = dir.relativize(path);
+    for (Rule rule : gitignoreRules(dir)) {
+      if (rule.matches(relative, directory)) {
+        ignored = !rule.negated;
+      }
+    }
+    return ignored;
+  }
+
+  private List<Rule> gitignoreRules(final Path dir) {
+    List<Rule> rules = gitignores.get(dir);
+    if (rules == null) {
+      rules = readGitignore(new File(dir.toFile(), GITIGNORE));
+      gitignores.put(dir, rules);
+    }
+    return rules;
+  }
+
+  // The lines of a .gitignore file as rules, none if there is no such file
+  private static List<Rule> readGitignore(final File file) {
+    if (!file.isFile()) {
+      return NO_RULES;
+    }
+    List<Rule> rules = new ArrayList<Rule>();
+    try {
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")));
+      try {
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+          Rule rule = gitignoreRule(line);
+          if (rule != null) {
+            rules.add(rule);
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Error: Can't read " + file + " (" + e.getMessage() + ")");
+    }
+    return rules;
+  }
+
+  // A .gitignore line as a rule, null for a comment or an empty line
+  private static Rule gitignoreRule(String line) {
+    if (line.startsWith("#")) {
+      return null;
+    }
+    // Trailing spaces don't count unless escaped
+    int end = line.length();
+    while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+      end--;
+    }
+    line = line.substring(0, end);
+    boolean negated = line.startsWith("!");
+    if (negated) {
+      line = line.substring(1);
+    }
+    boolean directoryOnly = line.endsWith("/");
+    if (directoryOnly) {
+      line = line.substring(0, line.length() - 1);
+    }
+    if (line.length() == 0) {
+      return null;
+    }
+    // "**/name" is the same as "name", a '/' anywhere else ties the pattern to the directory
+    if (line.startsWith("**/") && line.indexOf('/', 3) < 0) {
+      line = line.substring(3);
+    }
+    boolean nameOnly = line.indexOf('/') < 0;
+    if (line.startsWith("/")) {
+      line = line.substring(1);
+    }
+    // Braces have a meaning in a glob but not in .gitignore
+    String glob = line.replace("{", "\\{").replace("}", "\\}");
+    try {
+      return new Rule(FileSystems.getDefault().getPathMatcher("glob:" + glob), nameOnly, directoryOnly, negated);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
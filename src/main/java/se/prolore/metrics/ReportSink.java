@@ -0,0 +1,12 @@
+package se.prolore.metrics;
+
+// Gets the results of a run one file at a time, in file order, so nothing has to be kept
+// until the end: first the files, then the deleted files and last the totals.
+public interface ReportSink {
+  void file(ComplexityParser file);
+
+  void deletedFile(ComplexityParser deletedFile);
+
+  // All files are done
+  void close(ReportTotals totals);
+}
@@ -0,0 +1,175 @@
+package se.prolore.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Running totals of the files of a report, so the files themselves don't have to be kept.
+// Sums the same way as SourceFiles does. With modules, the totals of each module are kept
+// as well, from the same files as they pass.
+public class ReportTotals {
+  private int LOC = 0;
+  private int stLOC = 0;
+  private int ccLOC = 0;
+  private int trLOC = 0;
+  private int emLOC = 0;
+  private int CC = 0;
+  private int nrOfFiles = 0;
+  private int adLOC = 0;
+  private int chLOC = 0;
+  private int dlLOC = 0;
+  private int codeChurn = 0;
+  private int nrOfMethods = 0;
+  // The totals of each module in the order they were defined, null without modules
+  private final Map<String, ReportTotals> modules;
+
+  // With the modules of -m, if there are any
+  ReportTotals() {
+    this(SourceFiles.getModules());
+  }
+
+  private ReportTotals(final Modules definedModules) {
+    if (definedModules == null) {
+      modules = null;
+      return;
+    }
+    modules = new LinkedHashMap<String, ReportTotals>();
+    for (String name : definedModules.getNames()) {
+      modules.put(name, new ReportTotals((Modules) null));
+    }
+  }
+
+  public void add(final ComplexityParser file) {
+    LOC += file.getLinesOfCode();
+    stLOC += file.getLinesOfStatements();
+    ccLOC += file.getLinesOfComments();
+    trLOC += file.getTrivialLines();
+    emLOC += file.getEmptyLines();
+    CC += file.getComplexity();
+    nrOfFiles++;
+    adLOC += file.getAddedLines();
+    chLOC += file.getChangedLines();
+    dlLOC += file.getDeletedLines();
+    codeChurn += file.getCodeChurn();
+    nrOfMethods += file.getNrOfMethods();
+    ReportTotals module = moduleOf(file);
+    if (module != null) {
+      module.add(file);
+    }
+  }
+
+  // Take back what add(file) added, when the file changed or is gone
+  public void remove(final ComplexityParser file) {
+    LOC -= file.getLinesOfCode();
+    stLOC -= file.getLinesOfStatements();
+    ccLOC -= file.getLinesOfComments();
+    trLOC -= file.getTrivialLines();
+    emLOC -= file.getEmptyLines();
+    CC -= file.getComplexity();
+    nrOfFiles--;
+    adLOC -= file.getAddedLines();
+    chLOC -= file.getChangedLines();
+    dlLOC -= file.getDeletedLines();
+    codeChurn -= file.getCodeChurn();
+    nrOfMethods -= file.getNrOfMethods();
+    ReportTotals module = moduleOf(file);
+    if (module != null) {
+      module.remove(file);
+    }
+  }
+
+  // A deleted file only adds to the code churn
+  public void addDeleted(final ComplexityParser deletedFile) {
+    dlLOC += deletedFile.getDeletedLines();
+    codeChurn += deletedFile.getCodeChurn();
+    ReportTotals module = moduleOf(deletedFile);
+    if (module != null) {
+      module.addDeleted(deletedFile);
+    }
+  }
+
+  private ReportTotals moduleOf(final ComplexityParser file) {
+    if (modules == null || file.getModule() == null) {
+      return null;
+    }
+    return modules.get(file.getModule());
+  }
+
+  // The totals of each module by name, in the order they were defined. Empty without
+  // modules, and without OTHER when no file is outside the modules.
+  public Map<String, ReportTotals> getModules() {
+    if (modules == null) {
+      return Collections.emptyMap();
+    }
+    ReportTotals other = modules.get(Modules.OTHER);
+    if (other.getNrOfFiles() == 0 && other.sumCodeChurn() == 0) {
+      Map<String, ReportTotals> defined = new LinkedHashMap<String, ReportTotals>(modules);
+      defined.remove(Modules.OTHER);
+      return Collections.unmodifiableMap(defined);
+    }
+    return Collections.unmodifiableMap(modules);
+  }
+
+  public int sumLinesOfCode() {
+    return LOC;
+  }
+
+  public int sumLinesOfStatements() {
+    return stLOC;
+  }
+
+  public int sumLinesOfComments() {
+    return ccLOC;
+  }
+
+  public int sumTrivialLines() {
+    return trLOC;
+  }
+
+  public int sumEmptyLines() {
+    return emLOC;
+  }
+
+  public float sumComplexity() {
+    return (float) CC;
+  }
+
+  public int getNrOfFiles() {
+    return nrOfFiles;
+  }
+
+  public int getNrOfMethods() {
+    return nrOfMethods;
+  }
+
+  public float sumAvgComplexity() {
+    if (CC != 0) {
+      return (float) CC / nrOfFiles;
+    }
+    return (float) 0;
+  }
+
+  public int sumAddedLines() {
+    return adLOC;
+  }
+
+  public int sumChangedLines() {
+    return chLOC;
+  }
+
+  public int sumDeletedLines() {
+    return dlLOC;
+  }
+
+  public int sumCodeChurn() {
+    return codeChurn;
+  }
+
+  // Share of the lines that are comments, zero for an empty file
+  static int commentPercentage(final int linesOfComments, final int linesOfCode) {
+    if (linesOfCode == 0) {
+      return 0;
+    }
+    return (100 * linesOfComments) / linesOfCode;
+  }
+}
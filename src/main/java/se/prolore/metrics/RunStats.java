@@ -0,0 +1,228 @@
+package se.prolore.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Where the time of a run went: the wall time of each phase (walking, analysis, diffing,
+// report writing and so on), with the files, lines and bytes each phase processed, the peak
+// heap and the slowest files. Written as a JSON run summary, and optionally as JFR events.
+//
+// Phases follow each other and are started from the main thread. Files are counted from
+// any thread, into the phase that is running.
+public class RunStats {
+  static final int DEFAULT_SLOWEST = 10;
+
+  // One phase of the run
+  private static class Phase {
+    final String name;
+    final long start = System.nanoTime();
+    long nanos = 0;
+    final AtomicLong files = new AtomicLong();
+    final AtomicLong lines = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+    Object event = null;
+
+    Phase(final String name) {
+      this.name = name;
+    }
+  }
+
+  // The time one file took in a phase
+  private static class FileTime {
+    final String phase;
+    final String path;
+    final long nanos;
+    final long lines;
+    final long bytes;
+
+    FileTime(final String phase, final String path, final long nanos, final long lines, final long bytes) {
+      this.phase = phase;
+      this.path = path;
+      this.nanos = nanos;
+      this.lines = lines;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final Comparator<FileTime> FASTEST_FIRST = new Comparator<FileTime>() {
+    public int compare(final FileTime a, final FileTime b) {
+      return a.nanos < b.nanos ? -1 : (a.nanos == b.nanos ? 0 : 1);
+    }
+  };
+
+  private final long start = System.nanoTime();
+  private final long startMillis = System.currentTimeMillis();
+  private final List<Phase> phases = new ArrayList<Phase>();
+  private volatile Phase current = null;
+  private final int maxSlowest;
+  // The slowest files so far, the fastest of them on top
+  private final PriorityQueue<FileTime> slowest;
+  private final boolean jfr;
+
+  // Keep the maxSlowest slowest files, and also send JFR events if jfr is set
+  RunStats(final int maxSlowest, final boolean jfr) {
+    this.maxSlowest = maxSlowest;
+    this.slowest = new PriorityQueue<FileTime>(Math.max(maxSlowest, 1), FASTEST_FIRST);
+    this.jfr = jfr && JfrEvents.isAvailable();
+    if (jfr && !this.jfr) {
+      System.err.println("Warning: This JVM has no JFR, -jfr is ignored");
+    }
+  }
+
+  // Start the next phase, the running phase ends
+  public void startPhase(final String name) {
+    endPhase();
+    Phase phase = new Phase(name);
+    if (jfr) {
+      phase.event = JfrEvents.startPhase(name);
+    }
+    phases.add(phase);
+    current = phase;
+  }
+
+  // End the running phase, if there is one
+  public void endPhase() {
+    Phase phase = current;
+    if (phase == null) {
+      return;
+    }
+    phase.nanos = System.nanoTime() - phase.start;
+    if (jfr) {
+      JfrEvents.endPhase(phase.event, phase.files.get(), phase.lines.get(), phase.bytes.get());
+    }
+    current = null;
+  }
+
+  // Time of a file analysed since startNanos, in the running phase
+  public void analyzed(final ComplexityParser parser, final long startNanos) {
+    File file = parser.getSourceFile();
+    fileDone(file.getPath(), System.nanoTime() - startNanos, parser.getLinesOfCode(), file.length());
+  }
+
+  // Time of a file pair compared since startNanos, in the running phase
+  public void compared(final FilePair pair, final long startNanos, final int lines) {
+    File oldFile = pair.getOldFile().getSourceFile();
+    File newFile = pair.getNewFile().getSourceFile();
+    fileDone(newFile.getPath(), System.nanoTime() - startNanos, lines, oldFile.length() + newFile.length());
+  }
+
+  private void fileDone(final String path, final long nanos, final long lines, final long bytes) {
+    Phase phase = current;
+    String phaseName = "";
+    if (phase != null) {
+      phase.files.incrementAndGet();
+      phase.lines.addAndGet(lines);
+      phase.bytes.addAndGet(bytes);
+      phaseName = phase.name;
+    }
+    if (jfr) {
+      JfrEvents.file(phaseName, path, nanos, lines, bytes);
+    }
+    if (maxSlowest > 0) {
+      synchronized (slowest) {
+        if (slowest.size() < maxSlowest) {
+          slowest.add(new FileTime(phaseName, path, nanos, lines, bytes));
+        }
+        else if (slowest.peek().nanos < nanos) {
+          slowest.poll();
+          slowest.add(new FileTime(phaseName, path, nanos, lines, bytes));
+        }
+      }
+    }
+  }
+
+  // Highest heap use of the run so far, as the sum of the peaks of the heap pools
+  static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peak = peak + pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  // Write the run summary as JSON, the running phase ends
+  public void write(final File file, final int threads, final AnalysisCache cache) {
+    endPhase();
+    List<FileTime> slowestFiles;
+    synchronized (slowest) {
+      slowestFiles = new ArrayList<FileTime>(slowest);
+    }
+    Collections.sort(slowestFiles, Collections.reverseOrder(FASTEST_FIRST));
+
+    try {
+      BufferedWriter out = new BufferedWriter(new FileWriter(file));
+      out.write("{\n");
+      out.write("  \"started\": " + quote(Instant.ofEpochMilli(startMillis).toString()) + ",\n");
+      out.write("  \"threads\": " + threads + ",\n");
+      out.write("  \"millis\": " + millis(System.nanoTime() - start) + ",\n");
+      out.write("  \"peakHeapBytes\": " + peakHeap() + ",\n");
+      if (cache != null) {
+        out.write("  \"cacheHits\": " + cache.getHits() + ",\n");
+        out.write("  \"cacheMisses\": " + cache.getMisses() + ",\n");
+      }
+      out.write("  \"phases\": [");
+      for (int i = 0; i < phases.size(); i++) {
+        Phase phase = phases.get(i);
+        double seconds = Math.max(phase.nanos, 1) / 1e9;
+        out.write(i == 0 ? "\n" : ",\n");
+        out.write("    {\"name\": " + quote(phase.name) + ", \"millis\": " + millis(phase.nanos)
+            + ", \"files\": " + phase.files.get() + ", \"lines\": " + phase.lines.get()
+            + ", \"bytes\": " + phase.bytes.get()
+            + ", \"filesPerSec\": " + Math.round(phase.files.get() / seconds)
+            + ", \"linesPerSec\": " + Math.round(phase.lines.get() / seconds)
+            + ", \"bytesPerSec\": " + Math.round(phase.bytes.get() / seconds) + "}");
+      }
+      out.write("\n  ],\n");
+      out.write("  \"slowestFiles\": [");
+      for (int i = 0; i < slowestFiles.size(); i++) {
+        FileTime time = slowestFiles.get(i);
+        out.write(i == 0 ? "\n" : ",\n");
+        out.write("    {\"phase\": " + quote(time.phase) + ", \"file\": " + quote(time.path)
+            + ", \"millis\": " + millis(time.nanos) + ", \"lines\": " + time.lines + ", \"bytes\": " + time.bytes + "}");
+      }
+      out.write("\n  ]\n");
+      out.write("}\n");
+      out.close();
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+    }
+  }
+
+  // Milliseconds with three decimals
+  private static String millis(final long nanos) {
+    return String.valueOf(nanos / 1000 / 1000.0);
+  }
+
+  // A JSON string
+  static String quote(final String text) {
+    StringBuilder quoted = new StringBuilder(text.length() + 2);
+    quoted.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      }
+      else if (c < ' ') {
+        quoted.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
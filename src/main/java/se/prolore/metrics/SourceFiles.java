@@ -1,44 +1,167 @@
 package se.prolore.metrics;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class SourceFiles {
 	ArrayList<ComplexityParser> srcFiles = null;
 
+	// Files that only exist in the old version, they count as deleted code churn
+	ArrayList<ComplexityParser> deletedFiles = null;
+
+	// Number of found files that may wait for a worker in analyzeSrcDir
+	static final int QUEUE_SIZE = 1024;
+
+	// A file found by the walk, and its number in walk order
+	private static class Found {
+		final ComplexityParser parser;
+		final int nr;
+
+		Found(final ComplexityParser parser, final int nr) {
+			this.parser = parser;
+			this.nr = nr;
+		}
+	}
+
+	// Put in the queue to tell a worker that the walk is done
+	private static final Found END_OF_WALK = new Found(null, -1);
+
 	// Cyclomatic Complexity
 	private int CC = 0;
 
+	// The modules of -m, the files get their module when they are found
+	private static volatile Modules modules = null;
+
 	// Constructor
 	SourceFiles() {
 		srcFiles = new ArrayList<ComplexityParser>();
+		deletedFiles = new ArrayList<ComplexityParser>();
+	}
+
+	public static void setModules(final Modules definedModules) {
+		modules = definedModules;
+	}
+
+	public static Modules getModules() {
+		return modules;
+	}
+
+	// A parser for a file found below root, in its module if there are modules
+	static ComplexityParser newParser(final File root, final File file) {
+		ComplexityParser parser = new ComplexityParser(file);
+		Modules definedModules = modules;
+		if (definedModules != null) {
+			parser.setModule(definedModules.moduleOf(root, file));
+		}
+		return parser;
 	}
 
 	// Parse a file path and find all source files
 	public void parseSrcDir(final File sDir) {
-		File[] faFiles = new File(sDir.getAbsolutePath()).listFiles();
+		try {
+			SourceWalker.walk(sDir, new SourceWalker.Listener() {
+				public void sourceFound(final File file) {
+					srcFiles.add(newParser(sDir, file));
+				}
+			});
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+		}
+	}
 
-		for (File file : faFiles) {
-			if (file.isFile()) {
-				// System.out.println(file.getName());
+	// Find all source files in a file path and analyse them while the walk is
+	// still running. Found files are handed to the workers through a bounded
+	// queue. The files are kept in the order they were found.
+	// Results are taken from the cache when possible, if there is one.
+	// The time of each file is added to stats, if there are stats.
+	// With a report each file is given to it when it is done, and not kept.
+	public void analyzeSrcDir(final File sDir, final WorkerPool workers, final AnalysisCache cache,
+			final RunStats stats, final StreamingReport report) {
+		final BlockingQueue<Found> queue = new ArrayBlockingQueue<Found>(QUEUE_SIZE);
+		final int consumers = workers.getThreads();
 
-				addSrcFile(file);
-			}
-			if (file.isDirectory()) {
-				parseSrcDir(file);
+		Thread walker = new Thread(new Runnable() {
+			public void run() {
+				try {
+					SourceWalker.walk(sDir, new SourceWalker.Listener() {
+						private int nr = 0;
+
+						public void sourceFound(final File file) throws InterruptedException {
+							ComplexityParser parser = newParser(sDir, file);
+							if (report == null) {
+								srcFiles.add(parser);
+							}
+							queue.put(new Found(parser, nr++));
+						}
+					});
+				} catch (IOException e) {
+					System.err.println("Error: " + e.getMessage());
+				} finally {
+					try {
+						for (int i = 0; i < consumers; i++) {
+							queue.put(END_OF_WALK);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
 			}
+		}, "metrics-walker");
+		walker.setDaemon(true);
+		walker.start();
+
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < consumers; i++) {
+			tasks.add(new Runnable() {
+				public void run() {
+					try {
+						for (Found found = queue.take(); found != END_OF_WALK; found = queue.take()) {
+							ComplexityParser parser = found.parser;
+							long start = System.nanoTime();
+							if (cache != null) {
+								cache.analyze(parser);
+							} else {
+								parser.analyze();
+							}
+							if (stats != null) {
+								stats.analyzed(parser, start);
+							}
+							if (report != null) {
+								report.add(found.nr, parser);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
 		}
+		workers.runAll(tasks);
+
+		// The walker is done when every worker has seen the end of the walk
+		try {
+			walker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// A file addSrcFile takes, a file of one of the languages (see FileTypes)
+	static boolean isSourceFile(final File sFile) {
+		return FileTypes.forFile(sFile) != null && sFile.isFile();
 	}
 
-	// Only work with one source file
-	public void addSrcFile(final File sFile) {
-		if (sFile.getName().endsWith("java") && sFile.isFile()) {
-			srcFiles.add(new ComplexityParser(sFile));
-		} else {
-			System.out
-					.println("ERROR: File type is not yet supported. Only support for java files.");
-			System.exit(1);
+	// Only work with one source file. False if it is not a source file.
+	public boolean addSrcFile(final File sFile) {
+		if (!isSourceFile(sFile)) {
+			return false;
 		}
+		srcFiles.add(newParser(sFile.getAbsoluteFile().getParentFile(), sFile));
+		return true;
 	}
 
 	// Return the total number of source code files
@@ -50,6 +173,19 @@ public class SourceFiles {
 		return srcFiles.get(index);
 	}
 
+	// A file that was deleted, with its deleted lines set
+	public void addDeletedFile(final ComplexityParser deletedFile) {
+		deletedFiles.add(deletedFile);
+	}
+
+	public int getNrOfDeletedFiles() {
+		return deletedFiles.size();
+	}
+
+	public ComplexityParser getDeletedFile(final int index) {
+		return deletedFiles.get(index);
+	}
+
 	// LOC Metrics
 	public int sumLinesOfCode() {
 		int LOC = 0; // Lines of Code (total)
@@ -93,6 +229,8 @@ public class SourceFiles {
 
 	// Complexity mertics
 	public float sumComplexity() {
+		// Summed in file order, so the result does not depend on how the files were analysed
+		CC = 0;
 		for (ComplexityParser srcFile : srcFiles) {
 			CC += srcFile.getComplexity();
 		}
@@ -100,6 +238,7 @@ public class SourceFiles {
 	}
 
 	public float sumAvgComplexity() {
+		sumComplexity();
 		if (CC != 0) {
 			return (float) CC / srcFiles.size();
 		}
@@ -128,6 +267,9 @@ public class SourceFiles {
 		for (ComplexityParser srcFile : srcFiles) {
 			dlLOC += srcFile.getDeletedLines();
 		}
+		for (ComplexityParser deletedFile : deletedFiles) {
+			dlLOC += deletedFile.getDeletedLines();
+		}
 		return dlLOC;
 	}
 
@@ -136,6 +278,9 @@ public class SourceFiles {
 		for (ComplexityParser srcFile : srcFiles) {
 			codeChurn += srcFile.getCodeChurn();
 		}
+		for (ComplexityParser deletedFile : deletedFiles) {
+			codeChurn += deletedFile.getCodeChurn();
+		}
 		return codeChurn;
 	}
 }
@@ -0,0 +1,121 @@
+package se.prolore.metrics;
+
+import java.nio.ByteBuffer;
+
+// A line of a SourceText, or a part of one. Only a view of the content, no characters are
+// copied, so one SourceLine is used for line after line. toString() makes a String of it.
+//
+// On bytes charAt() gives each byte as a char. ASCII characters are themselves, and the
+// bytes of other characters are all above 127, so they never look like ASCII.
+public class SourceLine implements CharSequence {
+  private ByteBuffer bytes = null;
+  private char[] chars = null;
+  private int start = 0;
+  private int end = 0;
+
+  void setBytes(final ByteBuffer content, final int from, final int to) {
+    bytes = content;
+    chars = null;
+    start = from;
+    end = to;
+  }
+
+  void setChars(final char[] content, final int from, final int to) {
+    bytes = null;
+    chars = content;
+    start = from;
+    end = to;
+  }
+
+  // Point this at a part of line, from and to are indexes in line
+  public void setPart(final SourceLine line, final int from, final int to) {
+    bytes = line.bytes;
+    chars = line.chars;
+    start = line.start + from;
+    end = line.start + to;
+  }
+
+  // Point this at a part of line without leading and trailing whitespace, like String.trim()
+  public void setTrimmed(final SourceLine line, int from, int to) {
+    while (from < to && line.charAt(from) <= ' ') {
+      from++;
+    }
+    while (to > from && line.charAt(to - 1) <= ' ') {
+      to--;
+    }
+    setPart(line, from, to);
+  }
+
+  public int length() {
+    return end - start;
+  }
+
+  public char charAt(final int index) {
+    if (bytes != null) {
+      return (char) (bytes.get(start + index) & 0xff);
+    }
+    return chars[start + index];
+  }
+
+  public CharSequence subSequence(final int from, final int to) {
+    SourceLine part = new SourceLine();
+    part.setPart(this, from, to);
+    return part;
+  }
+
+  // Are all characters ASCII?
+  private boolean isAscii() {
+    if (bytes == null) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (bytes.get(i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Same as toString().hashCode(), without making the String when the line is ASCII
+  public int contentHash() {
+    if (chars == null && !isAscii()) {
+      return toString().hashCode();
+    }
+    int h = 0;
+    for (int i = 0; i < length(); i++) {
+      h = 31 * h + charAt(i);
+    }
+    return h;
+  }
+
+  // Same as toString().equals(text), without making the String when the line is ASCII
+  public boolean contentEquals(final String text) {
+    if (chars == null && !isAscii()) {
+      return toString().equals(text);
+    }
+    if (text.length() != length()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (charAt(i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The line decoded with the charset of the source files
+  public String toString() {
+    if (chars != null) {
+      return new String(chars, start, end - start);
+    }
+    if (bytes.hasArray()) {
+      return new String(bytes.array(), bytes.arrayOffset() + start, end - start, SourceText.getCharset());
+    }
+    byte[] content = new byte[end - start];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = bytes.get(start + i);
+    }
+    return new String(content, SourceText.getCharset());
+  }
+}
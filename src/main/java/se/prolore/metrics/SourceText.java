@@ -0,0 +1,140 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+// The content of a source file, read in one go and split into lines the same way as
+// BufferedReader.readLine() does, without making a String of each line.
+//
+// Small files are read with one bulk read, large files are memory mapped. In a charset
+// where ASCII characters are single bytes that never occur inside other characters
+// (UTF-8, ISO-8859-x, windows-125x) the bytes are kept and the lines are looked at
+// byte by byte. Other charsets are decoded to chars once. The bytes of the file are kept
+// either way, so they can be hashed without reading the file again.
+public class SourceText {
+  // Files of this size or larger are memory mapped
+  static final int MAP_THRESHOLD = 1 << 20;
+
+  // The charset of all source files, set once with -encoding
+  private static volatile Charset charset = Charset.defaultCharset();
+  // Is charset ASCII compatible? Found once when it is set, not for each file
+  private static volatile boolean asciiCompatible = isAsciiCompatible(charset);
+
+  private final ByteBuffer content;  // the bytes of the file
+  private final ByteBuffer bytes;    // the content if it is kept as bytes, else null
+  private final char[] chars;        // the decoded content if it is not kept as bytes
+  private final int length;
+  private int pos = 0;
+
+  private SourceText(final ByteBuffer content, final ByteBuffer bytes, final char[] chars, final int length) {
+    this.content = content;
+    this.bytes = bytes;
+    this.chars = chars;
+    this.length = length;
+  }
+
+  public static void setCharset(final Charset sourceCharset) {
+    asciiCompatible = isAsciiCompatible(sourceCharset);
+    charset = sourceCharset;
+  }
+
+  public static Charset getCharset() {
+    return charset;
+  }
+
+  // Read the whole file
+  public static SourceText read(final File file) throws IOException {
+    Charset cs = charset;
+    boolean keepBytes = asciiCompatible;
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large: " + file);
+      }
+      ByteBuffer content;
+      if (size >= MAP_THRESHOLD) {
+        content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      else {
+        content = ByteBuffer.allocate((int) size);
+        while (content.hasRemaining() && channel.read(content) >= 0) {
+          // read until the buffer is full or the file ends
+        }
+        // As a Buffer, so the class also runs on Java 8 where ByteBuffer has no flip() of its own
+        ((Buffer) content).flip();
+      }
+
+      if (keepBytes) {
+        return new SourceText(content, content, null, content.limit());
+      }
+      CharBuffer decoded = cs.decode(content.duplicate());
+      char[] text = new char[decoded.remaining()];
+      decoded.get(text);
+      return new SourceText(content, null, text, text.length);
+    } finally {
+      in.close();
+    }
+  }
+
+  // The bytes of the file, from position 0 to the limit
+  public ByteBuffer getContent() {
+    return content.asReadOnlyBuffer();
+  }
+
+  // Is every ASCII character one byte of the same value, that is never part of another character?
+  static boolean isAsciiCompatible(final Charset cs) {
+    if (!cs.canEncode()) {
+      return false;
+    }
+    CharsetEncoder encoder = cs.newEncoder();
+    if (encoder.maxBytesPerChar() > 1.0f && !cs.name().equals("UTF-8")) {
+      return false;
+    }
+    for (char c = 0; c < 128; c++) {
+      byte[] encoded = String.valueOf(c).getBytes(cs);
+      if (encoded.length != 1 || encoded[0] != c) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Point line at the next line, without its line terminator. False at the end of the file.
+  public boolean nextLine(final SourceLine line) {
+    if (pos >= length) {
+      return false;
+    }
+    int start = pos;
+    int end = start;
+    if (bytes != null) {
+      while (end < length && bytes.get(end) != '\n' && bytes.get(end) != '\r') {
+        end++;
+      }
+      pos = end + 1;
+      if (end < length && bytes.get(end) == '\r' && pos < length && bytes.get(pos) == '\n') {
+        pos++;
+      }
+      line.setBytes(bytes, start, end);
+    }
+    else {
+      while (end < length && chars[end] != '\n' && chars[end] != '\r') {
+        end++;
+      }
+      pos = end + 1;
+      if (end < length && chars[end] == '\r' && pos < length && chars[pos] == '\n') {
+        pos++;
+      }
+      line.setChars(chars, start, end);
+    }
+    return true;
+  }
+}
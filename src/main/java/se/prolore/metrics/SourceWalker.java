@@ -0,0 +1,88 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// Walks a directory tree with NIO and hands every source file found to a Listener.
+// Directories are visited depth first, in the order the file system lists them.
+// Directories and files the filter skips are left out, the walk never goes into a
+// skipped directory.
+public class SourceWalker extends SimpleFileVisitor<Path> {
+  // The filter of all walks, set from the command line
+  private static volatile PathFilter filter = PathFilter.ALL;
+
+  // Called from the walking thread for each source file, in walk order
+  public interface Listener {
+    void sourceFound(File file) throws InterruptedException;
+  }
+
+  // A Listener that is also told about each directory, before the files in it
+  public interface DirectoryListener extends Listener {
+    void directoryFound(File directory);
+  }
+
+  private final Path root;
+  private final Listener listener;
+
+  SourceWalker(final Path root, final Listener listener) {
+    this.root = root;
+    this.listener = listener;
+  }
+
+  public static void setFilter(final PathFilter pathFilter) {
+    filter = pathFilter;
+  }
+
+  public static PathFilter getFilter() {
+    return filter;
+  }
+
+  // Walk the whole tree below root
+  public static void walk(final File root, final Listener listener) throws IOException {
+    Files.walkFileTree(root.toPath(), new SourceWalker(root.toPath(), listener));
+  }
+
+  // Walk the tree below start, which is a directory below root. The filter sees the
+  // paths as if the walk was from root.
+  public static void walk(final File root, final File start, final Listener listener) throws IOException {
+    Files.walkFileTree(start.toPath(), new SourceWalker(root.toPath(), listener));
+  }
+
+  @Override
+  public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+    if (!dir.equals(root) && filter.skipDirectory(root, dir)) {
+      return FileVisitResult.SKIP_SUBTREE;
+    }
+    if (listener instanceof DirectoryListener) {
+      ((DirectoryListener) listener).directoryFound(dir.toFile());
+    }
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+    if (attrs.isRegularFile() && FileTypes.forFile(file.getFileName().toString()) != null
+        && !filter.skipFile(root, file)) {
+      try {
+        listener.sourceFound(file.toFile());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Walk of " + file + " was interrupted");
+      }
+    }
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+    // Skip what we can't read instead of stopping the whole walk
+    System.err.println("Error: Can't read " + file + " (" + e.getMessage() + ")");
+    return FileVisitResult.CONTINUE;
+  }
+}
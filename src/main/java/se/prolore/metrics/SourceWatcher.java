@@ -0,0 +1,200 @@
+package se.prolore.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the metrics of a directory tree up to date while the files in it are edited.
+// Every directory of the tree is registered with a WatchService. Events are collected
+// until the tree has been quiet for DEBOUNCE_MILLIS, so a save that touches a file
+// several times, or a checkout that touches many, is handled once. Only the files in
+// the events are analysed again, and the totals are updated by taking out the old
+// metrics of each file and adding the new ones.
+public class SourceWatcher {
+  static final long DEBOUNCE_MILLIS = 200;
+
+  private final File root;
+  private final WorkerPool workers;
+  private final AnalysisCache cache;
+  private final PrintStream out;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+  // The files of the tree in the order they were found, new files last
+  private final Map<File, ComplexityParser> files = new LinkedHashMap<File, ComplexityParser>();
+  private final ReportTotals totals = new ReportTotals();
+
+  // Watch root, whose files are already analysed in srcFiles
+  SourceWatcher(final File root, final SourceFiles srcFiles, final WorkerPool workers, final AnalysisCache cache,
+      final PrintStream out) throws IOException {
+    this.root = root;
+    this.workers = workers;
+    this.cache = cache;
+    this.out = out;
+    for (int i = 0; i < srcFiles.getNrOfFiles(); i++) {
+      ComplexityParser parser = srcFiles.getParser(i);
+      files.put(parser.getSourceFile(), parser);
+      totals.add(parser);
+    }
+    watchService = FileSystems.getDefault().newWatchService();
+    register(root, null);
+  }
+
+  // Watch until the thread is interrupted
+  public void run() {
+    try {
+      while (true) {
+        Set<File> changed = new LinkedHashSet<File>();
+        boolean overflow = collect(watchService.take(), changed);
+        for (WatchKey key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS); key != null;
+            key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) {
+          overflow = collect(key, changed) || overflow;
+        }
+        if (overflow) {
+          // Events were lost, look at every file again
+          changed.addAll(files.keySet());
+          register(root, changed);
+        }
+        update(changed);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // Closed, nothing more to watch
+    } finally {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        System.err.println("Error: " + e.getMessage());
+      }
+    }
+  }
+
+  public ReportTotals getTotals() {
+    return totals;
+  }
+
+  // Add the paths of the events of key to changed. True if events were lost.
+  private boolean collect(final WatchKey key, final Set<File> changed) {
+    Path dir = directories.get(key);
+    boolean overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        overflow = true;
+      }
+      else if (dir != null) {
+        File file = dir.resolve((Path) event.context()).toFile();
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory()) {
+          // A new directory may have files already, they are found when it is registered
+          register(file, changed);
+        }
+        changed.add(file);
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+    return overflow;
+  }
+
+  // Register dir and the directories below it. The source files found are added to changed,
+  // unless changed is null.
+  private void register(final File dir, final Set<File> changed) {
+    try {
+      SourceWalker.walk(root, dir, new SourceWalker.DirectoryListener() {
+        public void directoryFound(final File directory) {
+          try {
+            Path path = directory.toPath();
+            directories.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), path);
+          } catch (IOException e) {
+            System.err.println("Error: Can't watch " + directory + " (" + e.getMessage() + ")");
+          }
+        }
+
+        public void sourceFound(final File file) {
+          if (changed != null) {
+            changed.add(file);
+          }
+        }
+      });
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+    }
+  }
+
+  // Analyse the changed files again and update the totals. A changed path that is no
+  // longer there may be a directory, then the files that were in it are gone too.
+  private void update(final Set<File> changed) {
+    final List<ComplexityParser> analysed = new ArrayList<ComplexityParser>();
+    Set<File> removed = new LinkedHashSet<File>();
+    for (File file : changed) {
+      if (SourceFiles.isSourceFile(file) && !SourceWalker.getFilter().skipFile(root.toPath(), file.toPath())) {
+        analysed.add(SourceFiles.newParser(root, file));
+      }
+      else if (!file.exists()) {
+        String prefix = file.getPath() + File.separator;
+        for (File known : files.keySet()) {
+          if (known.equals(file) || known.getPath().startsWith(prefix)) {
+            removed.add(known);
+          }
+        }
+      }
+    }
+
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    for (final ComplexityParser parser : analysed) {
+      tasks.add(new Runnable() {
+        public void run() {
+          if (cache != null) {
+            cache.analyze(parser);
+          }
+          else {
+            parser.analyze();
+          }
+        }
+      });
+    }
+    workers.runAll(tasks);
+
+    for (File file : removed) {
+      ComplexityParser old = files.remove(file);
+      if (old != null) {
+        totals.remove(old);
+      }
+    }
+    for (ComplexityParser parser : analysed) {
+      ComplexityParser old = files.put(parser.getSourceFile(), parser);
+      if (old != null) {
+        totals.remove(old);
+      }
+      totals.add(parser);
+    }
+    if (analysed.isEmpty() && removed.isEmpty()) {
+      return;
+    }
+
+    ConsoleReport report = new ConsoleReport(out, false);
+    for (ComplexityParser parser : analysed) {
+      report.file(parser);
+    }
+    for (File file : removed) {
+      out.println(file.getAbsolutePath() + " (removed)");
+    }
+    report.close(totals);
+  }
+}
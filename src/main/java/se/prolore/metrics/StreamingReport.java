@@ -0,0 +1,62 @@
+package se.prolore.metrics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Gives the files of a run to the report sinks as soon as they are done, in the order they
+// were found, and keeps running totals of them. Files done before an earlier one wait in a
+// reorder buffer. When the buffer is full, workers with later files wait until the earlier
+// files are done, so memory does not grow with the number of files.
+public class StreamingReport {
+  static final int MAX_PENDING = 4096;
+
+  private final List<ReportSink> sinks;
+  private final ReportTotals totals = new ReportTotals();
+  private final Map<Integer, ComplexityParser> pending = new HashMap<Integer, ComplexityParser>();
+  private int next = 0;
+
+  StreamingReport(final List<ReportSink> sinks) {
+    this.sinks = sinks;
+  }
+
+  // File number nr (counted from 0) is done
+  public synchronized void add(final int nr, final ComplexityParser file) throws InterruptedException {
+    // The next file never waits, so the files waited for always come
+    while (nr != next && pending.size() >= MAX_PENDING) {
+      wait();
+    }
+    pending.put(nr, file);
+    boolean written = false;
+    for (ComplexityParser ready = pending.remove(next); ready != null; ready = pending.remove(next)) {
+      totals.add(ready);
+      for (ReportSink sink : sinks) {
+        sink.file(ready);
+      }
+      next++;
+      written = true;
+    }
+    if (written) {
+      notifyAll();
+    }
+  }
+
+  // A deleted file, after all other files are added
+  public synchronized void addDeleted(final ComplexityParser deletedFile) {
+    totals.addDeleted(deletedFile);
+    for (ReportSink sink : sinks) {
+      sink.deletedFile(deletedFile);
+    }
+  }
+
+  // All files are added, write the totals
+  public synchronized void close() {
+    for (ReportSink sink : sinks) {
+      sink.close(totals);
+    }
+  }
+
+  public ReportTotals getTotals() {
+    return totals;
+  }
+}
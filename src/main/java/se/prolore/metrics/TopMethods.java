@@ -0,0 +1,86 @@
+package se.prolore.metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// The K most complex methods of all files, printed after the totals. Only K methods are
+// kept, in a heap with the least complex of them on top, so any number of methods can
+// pass through without sorting them all.
+public class TopMethods implements ReportSink {
+  static final int DEFAULT_K = 20;
+
+  // A method and the file it is in
+  private static class Entry {
+    final String path;
+    final String signature;
+    final int firstLine;
+    final int lastLine;
+    final int complexity;
+    final long nr;   // order of the method in the run, earlier methods win ties
+
+    Entry(final String path, final Method method, final long nr) {
+      this.path = path;
+      this.signature = MethodReport.signature(method);
+      this.firstLine = method.getLineNr();
+      this.lastLine = method.getLastLineNr();
+      this.complexity = method.getComplexity();
+      this.nr = nr;
+    }
+  }
+
+  // Least complex first, and of equally complex methods the later one first
+  private static final Comparator<Entry> LEAST_FIRST = new Comparator<Entry>() {
+    public int compare(final Entry a, final Entry b) {
+      if (a.complexity != b.complexity) {
+        return a.complexity < b.complexity ? -1 : 1;
+      }
+      return a.nr > b.nr ? -1 : (a.nr == b.nr ? 0 : 1);
+    }
+  };
+
+  private final PrintStream out;
+  private final int k;
+  private final PriorityQueue<Entry> top;
+  private long nrOfMethods = 0;
+
+  TopMethods(final PrintStream out, final int k) {
+    this.out = out;
+    this.k = k;
+    top = new PriorityQueue<Entry>(Math.max(k, 1), LEAST_FIRST);
+  }
+
+  public void file(final ComplexityParser file) {
+    String path = null;
+    for (int i = 0; i < file.getNrOfMethods(); i++) {
+      Method method = file.getMethod(i);
+      long nr = nrOfMethods++;
+      if (top.size() < k) {
+        path = path == null ? file.getSourceFile().getAbsolutePath() : path;
+        top.add(new Entry(path, method, nr));
+      }
+      else if (k > 0 && method.getComplexity() > top.peek().complexity) {
+        path = path == null ? file.getSourceFile().getAbsolutePath() : path;
+        top.poll();
+        top.add(new Entry(path, method, nr));
+      }
+    }
+  }
+
+  public void deletedFile(final ComplexityParser deletedFile) {
+  }
+
+  public void close(final ReportTotals totals) {
+    List<Entry> entries = new ArrayList<Entry>(top);
+    Collections.sort(entries, Collections.reverseOrder(LEAST_FIRST));
+    out.println("Most Complex Methods (" + entries.size() + " of " + nrOfMethods + ")");
+    for (Entry entry : entries) {
+      out.println("\t " + entry.complexity + "\t " + entry.path + ":" + entry.firstLine + "-" + entry.lastLine
+          + "\t " + entry.signature);
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,66 @@
+package se.prolore.metrics;
+
+import java.io.PrintWriter;
+
+// Writes the differences found by Diff as a unified diff without context lines.
+// A moved block is written as deleted where it was and as added where it is now.
+public class UnifiedDiffWriter implements DiffSink {
+  private final PrintWriter out;
+
+  // The current hunk, not written until it ends
+  private int oldStart, newStart;
+  private int oldCount, newCount;
+  private final StringBuilder removed = new StringBuilder();
+  private final StringBuilder inserted = new StringBuilder();
+
+  public UnifiedDiffWriter(final PrintWriter out) {
+    this.out = out;
+  }
+
+  public void startFile(final String oldFile, final String newFile) {
+    out.println("--- " + oldFile);
+    out.println("+++ " + newFile);
+    oldCount = newCount = 0;
+  }
+
+  public void oldLine(final int status, final int oldLineNr, final int newLineNr, final String line) {
+    startHunk(oldLineNr, newLineNr);
+    removed.append('-').append(line).append('\n');
+    oldCount++;
+  }
+
+  public void newLine(final int status, final int oldLineNr, final int newLineNr, final String line) {
+    startHunk(oldLineNr, newLineNr);
+    inserted.append('+').append(line).append('\n');
+    newCount++;
+  }
+
+  public void endFile() {
+    writeHunk();
+    out.flush();
+  }
+
+  // Start a new hunk unless the line follows right after the current one
+  private void startHunk(final int oldLineNr, final int newLineNr) {
+    if (oldCount + newCount > 0 && oldLineNr == oldStart + oldCount && newLineNr == newStart + newCount) {
+      return;
+    }
+    writeHunk();
+    oldStart = oldLineNr;
+    newStart = newLineNr;
+  }
+
+  private void writeHunk() {
+    if (oldCount + newCount == 0) {
+      return;
+    }
+    // An empty side is given as the line before it, like diff -u does
+    out.println("@@ -" + (oldCount == 0 ? oldStart - 1 : oldStart) + "," + oldCount
+        + " +" + (newCount == 0 ? newStart - 1 : newStart) + "," + newCount + " @@");
+    out.print(removed);
+    out.print(inserted);
+    removed.setLength(0);
+    inserted.setLength(0);
+    oldCount = newCount = 0;
+  }
+}
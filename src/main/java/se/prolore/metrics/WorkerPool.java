@@ -0,0 +1,80 @@
+package se.prolore.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Runs independent tasks (one per source file) on a fixed number of threads.
+// With a single thread the tasks are run in order on the calling thread, which
+// is the same as the old sequential behaviour.
+public class WorkerPool {
+  private final int threads;
+  private ExecutorService executor = null;
+
+  // Constructor, zero or less means one thread per available processor
+  WorkerPool(final int threads) {
+    if (threads <= 0) {
+      this.threads = Runtime.getRuntime().availableProcessors();
+    }
+    else {
+      this.threads = threads;
+    }
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  // Run all tasks and wait until every one of them is done.
+  // The tasks must not depend on each other, they may run in any order.
+  public void runAll(final List<? extends Runnable> tasks) {
+    if (threads == 1 || tasks.size() <= 1) {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      return;
+    }
+
+    List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+    for (Runnable task : tasks) {
+      futures.add(getExecutor().submit(task));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  // Stop the worker threads, the pool can not be used after this
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        private int count = 0;
+
+        public synchronized Thread newThread(final Runnable task) {
+          Thread thread = new Thread(task, "metrics-worker-" + (++count));
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+}
@@ -0,0 +1,41 @@
+package se.prolore.metrics;
+
+// XML has no methods, its lines are only counted. A line inside "<!--" and "-->" is a comment.
+public class XmlFileType implements FileType {
+
+	// Version of the rules of this class, see JavaFileType.RULES_VERSION
+	static final int RULES_VERSION = 2;
+
+	public String getName() {
+		return "xml";
+	}
+
+	public String getRulesVersion() {
+		return RULES_VERSION + ":" + getLineComment();
+	}
+
+	// There are no statements, a line that is not empty or a comment is counted as one anyway
+	public boolean isLineStatement(CharSequence strLine) {
+		return false;
+	}
+
+	public boolean lineIsTrivial(CharSequence strLine) {
+		return false;
+	}
+
+	public boolean hasMethods() {
+		return false;
+	}
+
+	public int category(CharSequence line, int start, int end) {
+		return NONE;
+	}
+
+	public Lexer newLexer() {
+		return new XmlLexer();
+	}
+
+	public String getLineComment() {
+		return "<!--";
+	}
+}
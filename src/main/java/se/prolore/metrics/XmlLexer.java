@@ -0,0 +1,107 @@
+package se.prolore.metrics;
+
+// Splits lines of XML into comments ("<!--" to "-->", also over several lines) and the
+// text between them, which is one LITERAL token. Nothing else of XML is needed, its
+// lines are only counted.
+public class XmlLexer implements Lexer {
+  private static final String COMMENT_START = "<!--";
+  private static final String COMMENT_END = "-->";
+
+  private boolean inComment = false;
+  private CharSequence line = "";
+  private int pos = 0;
+  private int tokenStart = 0;
+  private int tokenEnd = 0;
+
+  public void reset() {
+    inComment = false;
+    line = "";
+    pos = tokenStart = tokenEnd = 0;
+  }
+
+  public void setLine(final CharSequence line) {
+    this.line = line;
+    pos = 0;
+    tokenStart = tokenEnd = 0;
+  }
+
+  public int next() {
+    int length = line.length();
+    if (pos >= length) {
+      return endOfLine();
+    }
+
+    if (inComment) {
+      tokenStart = pos;
+      skipComment();
+      tokenEnd = pos;
+      return COMMENT;
+    }
+
+    // Skip whitespace
+    while (pos < length && Character.isWhitespace(line.charAt(pos))) {
+      pos++;
+    }
+    if (pos >= length) {
+      return endOfLine();
+    }
+    tokenStart = pos;
+
+    if (startsWith(COMMENT_START, pos)) {
+      pos += COMMENT_START.length();
+      inComment = true;
+      skipComment();
+      tokenEnd = pos;
+      return COMMENT;
+    }
+    // Tags and text up to the next comment, without the whitespace before it
+    while (pos < length && !startsWith(COMMENT_START, pos)) {
+      pos++;
+    }
+    tokenEnd = pos;
+    while (Character.isWhitespace(line.charAt(tokenEnd - 1))) {
+      tokenEnd--;
+    }
+    return LITERAL;
+  }
+
+  public int getTokenStart() {
+    return tokenStart;
+  }
+
+  public int getTokenEnd() {
+    return tokenEnd;
+  }
+
+  // Let go of the line so it is not kept alive between lines, the state is kept
+  private int endOfLine() {
+    line = "";
+    pos = tokenStart = tokenEnd = 0;
+    return END;
+  }
+
+  // Move past the end of the comment, or to the end of the line
+  private void skipComment() {
+    int length = line.length();
+    while (pos < length) {
+      if (startsWith(COMMENT_END, pos)) {
+        pos += COMMENT_END.length();
+        inComment = false;
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private boolean startsWith(final String text, final int at) {
+    if (at + text.length() > line.length()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (line.charAt(at + i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}